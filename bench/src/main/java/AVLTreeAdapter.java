@@ -0,0 +1,72 @@
+import java.util.concurrent.ForkJoinPool;
+
+import avltree.bench.Tree;
+
+/**
+ * AVLTreeAdapter
+ * Exposes AVLTree to the benchmarks in avltree.bench - see Tree
+ */
+public class AVLTreeAdapter implements Tree {
+
+    private final AVLTree tree;
+
+    public AVLTreeAdapter() {
+        this(new AVLTree());
+    }
+
+    private AVLTreeAdapter(AVLTree tree) {
+        this.tree = tree;
+    }
+
+    public int insert(int k, String i) {
+        return tree.insert(k, i);
+    }
+
+    public int delete(int k) {
+        return tree.delete(k);
+    }
+
+    public String search(int k) {
+        return tree.search(k);
+    }
+
+    public Tree[] split(int x) {
+        AVLTree[] trees = tree.split(x);
+        return new Tree[]{new AVLTreeAdapter(trees[0]), new AVLTreeAdapter(trees[1])};
+    }
+
+    public int join(int k, String i, Tree t) {
+        return tree.join(new AVLTree.AVLNode(k, i), ((AVLTreeAdapter) t).tree);
+    }
+
+    public int[] keysToArray() {
+        return tree.keysToArray();
+    }
+
+    public String[] infoToArray() {
+        return tree.infoToArray();
+    }
+
+    public int size() {
+        return tree.size();
+    }
+
+    public Tree merge(Tree t, boolean union, ForkJoinPool pool) {
+        AVLTree other = ((AVLTreeAdapter) t).tree;
+        AVLTree.ConflictResolver mine = (key, info, otherInfo) -> info;
+        if (pool == null && union) {
+            tree.union(other, mine);
+        } else if (pool == null) {
+            tree.intersect(other, mine);
+        } else if (union) {
+            tree.parallelUnion(other, mine, pool);
+        } else {
+            tree.parallelIntersect(other, mine, pool);
+        }
+        return this;
+    }
+
+    public Tree buildFromSorted(int[] keys, String[] infos) {
+        return new AVLTreeAdapter(AVLTree.buildFromSorted(keys, infos));
+    }
+}
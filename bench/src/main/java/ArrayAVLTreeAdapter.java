@@ -0,0 +1,61 @@
+import java.util.concurrent.ForkJoinPool;
+
+import avltree.bench.Tree;
+
+/**
+ * ArrayAVLTreeAdapter
+ * Exposes ArrayAVLTree to the benchmarks in avltree.bench - see Tree
+ */
+public class ArrayAVLTreeAdapter implements Tree {
+
+    private final ArrayAVLTree tree;
+
+    public ArrayAVLTreeAdapter() {
+        this(new ArrayAVLTree());
+    }
+
+    private ArrayAVLTreeAdapter(ArrayAVLTree tree) {
+        this.tree = tree;
+    }
+
+    public int insert(int k, String i) {
+        return tree.insert(k, i);
+    }
+
+    public int delete(int k) {
+        return tree.delete(k);
+    }
+
+    public String search(int k) {
+        return tree.search(k);
+    }
+
+    public Tree[] split(int x) {
+        ArrayAVLTree[] trees = tree.split(x);
+        return new Tree[]{new ArrayAVLTreeAdapter(trees[0]), new ArrayAVLTreeAdapter(trees[1])};
+    }
+
+    public int join(int k, String i, Tree t) {
+        return tree.join(k, i, ((ArrayAVLTreeAdapter) t).tree);
+    }
+
+    public int[] keysToArray() {
+        return tree.keysToArray();
+    }
+
+    public String[] infoToArray() {
+        return tree.infoToArray();
+    }
+
+    public int size() {
+        return tree.size();
+    }
+
+    public Tree merge(Tree t, boolean union, ForkJoinPool pool) {
+        throw new UnsupportedOperationException("ArrayAVLTree has no set operations");
+    }
+
+    public Tree buildFromSorted(int[] keys, String[] infos) {
+        throw new UnsupportedOperationException("ArrayAVLTree cannot build from sorted keys");
+    }
+}
@@ -0,0 +1,26 @@
+import avltree.bench.ConcurrentTree;
+
+/**
+ * ConcurrentAVLTreeAdapter
+ * Exposes ConcurrentAVLTree to the benchmarks in avltree.bench - see ConcurrentTree
+ */
+public class ConcurrentAVLTreeAdapter implements ConcurrentTree {
+
+    private final ConcurrentAVLTree tree = new ConcurrentAVLTree();
+
+    public int insert(int k, String i) {
+        return tree.insert(k, i);
+    }
+
+    public int delete(int k) {
+        return tree.delete(k);
+    }
+
+    public String search(int k) {
+        return tree.search(k);
+    }
+
+    public int size() {
+        return tree.size();
+    }
+}
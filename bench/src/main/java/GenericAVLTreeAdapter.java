@@ -0,0 +1,63 @@
+import java.util.concurrent.ForkJoinPool;
+
+import avltree.bench.Tree;
+
+/**
+ * GenericAVLTreeAdapter
+ * Exposes GenericAVLTree<Integer, String>, in natural key order, to the benchmarks in avltree.bench - see Tree.
+ * Against IntAVLTreeAdapter, it measures the cost of boxed keys compared by a Comparator.
+ */
+public class GenericAVLTreeAdapter implements Tree {
+
+    private final GenericAVLTree<Integer, String> tree;
+
+    public GenericAVLTreeAdapter() {
+        this(GenericAVLTree.naturalOrder());
+    }
+
+    private GenericAVLTreeAdapter(GenericAVLTree<Integer, String> tree) {
+        this.tree = tree;
+    }
+
+    public int insert(int k, String i) {
+        return tree.insert(k, i);
+    }
+
+    public int delete(int k) {
+        return tree.delete(k);
+    }
+
+    public String search(int k) {
+        return tree.search(k);
+    }
+
+    public Tree[] split(int x) {
+        GenericAVLTree<Integer, String>[] trees = tree.split(x);
+        return new Tree[]{new GenericAVLTreeAdapter(trees[0]), new GenericAVLTreeAdapter(trees[1])};
+    }
+
+    public int join(int k, String i, Tree t) {
+        tree.join(k, i, ((GenericAVLTreeAdapter) t).tree);
+        return 0;
+    }
+
+    public int[] keysToArray() {
+        return tree.keys().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public String[] infoToArray() {
+        return tree.values().toArray(new String[0]);
+    }
+
+    public int size() {
+        return tree.size();
+    }
+
+    public Tree merge(Tree t, boolean union, ForkJoinPool pool) {
+        throw new UnsupportedOperationException("GenericAVLTree has no set operations");
+    }
+
+    public Tree buildFromSorted(int[] keys, String[] infos) {
+        throw new UnsupportedOperationException("GenericAVLTree cannot build from sorted keys");
+    }
+}
@@ -0,0 +1,62 @@
+import java.util.concurrent.ForkJoinPool;
+
+import avltree.bench.Tree;
+
+/**
+ * IntAVLTreeAdapter
+ * Exposes IntAVLTree<String> to the benchmarks in avltree.bench - see Tree
+ */
+public class IntAVLTreeAdapter implements Tree {
+
+    private final IntAVLTree<String> tree;
+
+    public IntAVLTreeAdapter() {
+        this(new IntAVLTree<>());
+    }
+
+    private IntAVLTreeAdapter(IntAVLTree<String> tree) {
+        this.tree = tree;
+    }
+
+    public int insert(int k, String i) {
+        return tree.insert(k, i);
+    }
+
+    public int delete(int k) {
+        return tree.delete(k);
+    }
+
+    public String search(int k) {
+        return tree.search(k);
+    }
+
+    public Tree[] split(int x) {
+        IntAVLTree<String>[] trees = tree.split(x);
+        return new Tree[]{new IntAVLTreeAdapter(trees[0]), new IntAVLTreeAdapter(trees[1])};
+    }
+
+    public int join(int k, String i, Tree t) {
+        tree.join(k, i, ((IntAVLTreeAdapter) t).tree);
+        return 0;
+    }
+
+    public int[] keysToArray() {
+        return tree.keysToArray();
+    }
+
+    public String[] infoToArray() {
+        return tree.values().toArray(new String[0]);
+    }
+
+    public int size() {
+        return tree.size();
+    }
+
+    public Tree merge(Tree t, boolean union, ForkJoinPool pool) {
+        throw new UnsupportedOperationException("IntAVLTree has no set operations");
+    }
+
+    public Tree buildFromSorted(int[] keys, String[] infos) {
+        throw new UnsupportedOperationException("IntAVLTree cannot build from sorted keys");
+    }
+}
@@ -0,0 +1,26 @@
+import avltree.bench.ConcurrentTree;
+
+/**
+ * LockFreeAVLTreeAdapter
+ * Exposes LockFreeAVLTree to the benchmarks in avltree.bench - see ConcurrentTree
+ */
+public class LockFreeAVLTreeAdapter implements ConcurrentTree {
+
+    private final LockFreeAVLTree tree = new LockFreeAVLTree();
+
+    public int insert(int k, String i) {
+        return tree.insert(k, i);
+    }
+
+    public int delete(int k) {
+        return tree.delete(k);
+    }
+
+    public String search(int k) {
+        return tree.search(k);
+    }
+
+    public int size() {
+        return tree.size();
+    }
+}
@@ -0,0 +1,30 @@
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import avltree.bench.ConcurrentTree;
+
+/**
+ * SynchronizedTreeMapAdapter
+ * Collections.synchronizedMap(new TreeMap()) - the baseline of ConcurrentWorkloadBenchmark, see ConcurrentTree
+ */
+public class SynchronizedTreeMapAdapter implements ConcurrentTree {
+
+    private final Map<Integer, String> map = Collections.synchronizedMap(new TreeMap<>());
+
+    public int insert(int k, String i) {
+        return map.putIfAbsent(k, i) == null ? 0 : -1;
+    }
+
+    public int delete(int k) {
+        return map.remove(k) == null ? -1 : 0;
+    }
+
+    public String search(int k) {
+        return map.get(k);
+    }
+
+    public int size() {
+        return map.size();
+    }
+}
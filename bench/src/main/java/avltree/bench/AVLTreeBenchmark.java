@@ -0,0 +1,176 @@
+package avltree.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AVLTreeBenchmark
+ * Single-threaded cost of every tree operation, across tree sizes, the order
+ * the keys were inserted in, and tree implementations.
+ *
+ * Whole-tree operations (insert, delete, split, join) run once per iteration
+ * on a freshly built tree and report the time of the whole call - divide
+ * insert and delete by 'size' for the time per key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class AVLTreeBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"SEQUENTIAL", "REVERSE", "RANDOM", "ZIGZAG"})
+    public String distribution;
+
+    @Param({"AVLTree", "ArrayAVLTree", "IntAVLTree", "GenericAVLTree"})
+    public String impl;
+
+    private int[] keys;     //the tree's keys, in insertion order
+    private int[] probes;   //the tree's keys, shuffled - lookup order
+    private int[] absent;   //keys not in the tree, shuffled
+    private int probe;
+    private Tree tree;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = Trees.keys(distribution, size, 42);
+        probes = Trees.shuffled(keys, 7);
+        absent = new int[size];
+        for (int i = 0; i < size; i++) {
+            absent[i] = probes[i] + 1;
+        }
+        tree = Trees.build(impl, keys);
+    }
+
+    private int nextProbe() {
+        int i = probe++;
+        if (probe == size) {
+            probe = 0;
+        }
+        return i;
+    }
+
+    @Benchmark
+    public String search() {
+        return tree.search(probes[nextProbe()]);
+    }
+
+    @Benchmark
+    public String searchMiss() {
+        return tree.search(absent[nextProbe()]);
+    }
+
+    /**
+     * Insert of an absent key, then its delete - keeps the tree at 'size' keys
+     */
+    @Benchmark
+    public int insertDelete() {
+        int k = absent[nextProbe()];
+        return tree.insert(k, "info") + tree.delete(k);
+    }
+
+    @Benchmark
+    public int[] keysToArray() {
+        return tree.keysToArray();
+    }
+
+    @Benchmark
+    public String[] infoToArray() {
+        return tree.infoToArray();
+    }
+
+    /**
+     * Builds the whole tree, inserting the keys in 'distribution' order
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public Tree insert() {
+        return Trees.build(impl, keys);
+    }
+
+    /**
+     * A tree of all the keys, rebuilt before every iteration of the single-shot benchmarks
+     */
+    @State(Scope.Benchmark)
+    public static class FreshTree {
+        Tree tree;
+
+        @Setup(Level.Iteration)
+        public void setUp(AVLTreeBenchmark b) {
+            tree = Trees.build(b.impl, b.keys);
+        }
+    }
+
+    /**
+     * Deletes every key, in 'distribution' order
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public Tree delete(FreshTree fresh) {
+        for (int k : keys) {
+            fresh.tree.delete(k);
+        }
+        return fresh.tree;
+    }
+
+    /**
+     * Splits by a random key
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public Tree[] split(FreshTree fresh) {
+        return fresh.tree.split(probes[nextProbe()]);
+    }
+
+    /**
+     * The two halves of a tree split by a random key, rebuilt before every iteration
+     */
+    @State(Scope.Benchmark)
+    public static class SplitTree {
+        Tree[] halves;
+        int middle;
+
+        @Setup(Level.Iteration)
+        public void setUp(AVLTreeBenchmark b) {
+            middle = b.probes[b.nextProbe()];
+            halves = Trees.build(b.impl, b.keys).split(middle);
+        }
+    }
+
+    /**
+     * Joins back the two halves of a split by a random key
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public int join(SplitTree split) {
+        return split.halves[0].join(split.middle, "info", split.halves[1]);
+    }
+}
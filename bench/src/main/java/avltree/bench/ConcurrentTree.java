@@ -0,0 +1,23 @@
+package avltree.bench;
+
+/**
+ * ConcurrentTree
+ * The operations measured by ConcurrentWorkloadBenchmark, for thread-safe trees - reached through
+ * default-package adapters, as Tree.
+ */
+public interface ConcurrentTree {
+
+    /**
+     * @return -1 if k was already in the tree
+     */
+    int insert(int k, String i);
+
+    /**
+     * @return -1 if k was not in the tree
+     */
+    int delete(int k);
+
+    String search(int k);
+
+    int size();
+}
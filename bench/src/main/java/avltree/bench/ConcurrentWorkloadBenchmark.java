@@ -0,0 +1,96 @@
+package avltree.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ConcurrentWorkloadBenchmark
+ * Throughput of a read/write mix on one tree shared by 64 threads (change with -t):
+ * readPercent of the operations search a present key, the rest insert an absent key,
+ * or delete the key the same thread inserted last, so the tree stays at about 'size' keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Threads(64)
+public class ConcurrentWorkloadBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param({"95"})
+    public int readPercent;
+
+    @Param({"ConcurrentAVLTree", "LockFreeAVLTree", "SynchronizedTreeMap"})
+    public String impl;
+
+    private int[] probes;
+    private ConcurrentTree tree;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int[] keys = Trees.keys("RANDOM", size, 42);
+        probes = Trees.shuffled(keys, 7);
+        tree = Trees.buildConcurrent(impl, keys);
+    }
+
+    /**
+     * Per-thread position in the probes, random numbers, and the key it inserted last (-1 if none)
+     */
+    @State(Scope.Thread)
+    public static class Worker {
+        int probe;
+        long seed;
+        int inserted = -1;
+
+        @Setup(Level.Trial)
+        public void setUp(ConcurrentWorkloadBenchmark b) {
+            seed = System.identityHashCode(this) | 1L;
+            probe = (int) (seed % b.size);
+        }
+
+        /**
+         * xorshift - cheap enough not to show in the measurement
+         */
+        int nextRandom() {
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            return (int) (seed >>> 33);
+        }
+    }
+
+    @Benchmark
+    public Object operation(Worker w) {
+        int i = w.probe++;
+        if (w.probe == size) {
+            w.probe = 0;
+        }
+        if (w.nextRandom() % 100 < readPercent) {
+            return tree.search(probes[i]);
+        }
+        if (w.inserted == -1) {
+            w.inserted = probes[i] + 1; //odd keys are absent
+            return tree.insert(w.inserted, "info");
+        }
+        int k = w.inserted;
+        w.inserted = -1;
+        return tree.delete(k);
+    }
+}
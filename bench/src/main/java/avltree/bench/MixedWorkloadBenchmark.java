@@ -0,0 +1,82 @@
+package avltree.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MixedWorkloadBenchmark
+ * Average time of one operation of a read/write mix: readPercent of the operations
+ * search a present key, the rest insert an absent key or delete a previously inserted one,
+ * so the tree stays at about 'size' keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class MixedWorkloadBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"RANDOM"})
+    public String distribution;
+
+    @Param({"50", "90", "99"})
+    public int readPercent;
+
+    @Param({"AVLTree", "ArrayAVLTree", "IntAVLTree", "GenericAVLTree"})
+    public String impl;
+
+    private int[] probes;
+    private boolean[] inserted; //per probe, whether probe + 1 is currently in the tree
+    private int probe;
+    private long seed;
+    private Tree tree;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int[] keys = Trees.keys(distribution, size, 42);
+        probes = Trees.shuffled(keys, 7);
+        inserted = new boolean[size];
+        seed = 12345;
+        tree = Trees.build(impl, keys);
+    }
+
+    /**
+     * xorshift - cheap enough not to show in the measurement
+     */
+    private int nextRandom() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return (int) (seed >>> 33);
+    }
+
+    @Benchmark
+    public Object operation() {
+        int i = probe++;
+        if (probe == size) {
+            probe = 0;
+        }
+        if (nextRandom() % 100 < readPercent) {
+            return tree.search(probes[i]);
+        }
+        int k = probes[i] + 1;
+        inserted[i] = !inserted[i];
+        return inserted[i] ? tree.insert(k, "info") : tree.delete(k);
+    }
+}
@@ -0,0 +1,79 @@
+package avltree.bench;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ParallelMergeBenchmark
+ * Time of a union/intersection of two trees of 'size' keys each, half of them shared,
+ * on a ForkJoinPool of 'threads' threads - 1 runs the sequential operation, for the speedup baseline.
+ * The trees are rebuilt before every iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class ParallelMergeBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int threads;
+
+    @Param({"UNION", "INTERSECTION"})
+    public String operation;
+
+    @Param({"AVLTree"})
+    public String impl;
+
+    private int[] keys1;
+    private int[] keys2;
+    private ForkJoinPool pool;
+    private Tree tree1;
+    private Tree tree2;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys1 = Trees.keys("RANDOM", size, 42);
+        keys2 = new int[size];
+        for (int i = 0; i < size; i++) {
+            keys2[i] = keys1[i] + size; //keys1 shifted by size (even) - the upper half of keys1 is shared
+        }
+        pool = threads == 1 ? null : new ForkJoinPool(threads);
+    }
+
+    @Setup(Level.Iteration)
+    public void buildTrees() {
+        tree1 = Trees.build(impl, keys1);
+        tree2 = Trees.build(impl, keys2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public Tree merge() {
+        return tree1.merge(tree2, operation.equals("UNION"), pool);
+    }
+}
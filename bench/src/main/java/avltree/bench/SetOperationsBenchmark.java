@@ -0,0 +1,112 @@
+package avltree.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SetOperationsBenchmark
+ * Time of the union of a tree of 'size' keys with a tree of size * 'ratio' keys (keys drawn from [0, 4 size)),
+ * three ways: the split/join union, merging keysToArray() of both with a linear merge and rebuilding
+ * with buildFromSorted(), and inserting the smaller tree's keys one by one.
+ * The trees are rebuilt before every iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SetOperationsBenchmark {
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"0.001", "0.1", "1"})
+    public double ratio;
+
+    @Param({"AVLTree"})
+    public String impl;
+
+    private int[] bigKeys;
+    private int[] smallKeys;
+    private String[] bigInfos;
+    private String[] smallInfos;
+    private Tree big;
+    private Tree small;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rnd = new Random(42);
+        bigKeys = distinctSortedKeys(rnd, size, 4 * size);
+        smallKeys = distinctSortedKeys(rnd, Math.max((int) (size * ratio), 1), 4 * size);
+        bigInfos = new String[bigKeys.length];
+        smallInfos = new String[smallKeys.length];
+        Arrays.fill(bigInfos, "big");
+        Arrays.fill(smallInfos, "small");
+    }
+
+    private static int[] distinctSortedKeys(Random rnd, int count, int bound) {
+        return rnd.ints(0, bound).distinct().limit(count).sorted().toArray();
+    }
+
+    @Setup(Level.Iteration)
+    public void buildTrees() {
+        Tree empty = Trees.create(impl);
+        big = empty.buildFromSorted(bigKeys, bigInfos);
+        small = empty.buildFromSorted(smallKeys, smallInfos);
+    }
+
+    @Benchmark
+    public Tree union() {
+        return big.merge(small, true, null);
+    }
+
+    /**
+     * Both trees to arrays, a linear merge (the big tree's info wins), then buildFromSorted()
+     */
+    @Benchmark
+    public Tree arrayMerge() {
+        int[] k1 = big.keysToArray(), k2 = small.keysToArray();
+        String[] v1 = big.infoToArray(), v2 = small.infoToArray();
+        int[] keys = new int[k1.length + k2.length];
+        String[] infos = new String[keys.length];
+        int i = 0, j = 0, n = 0;
+        while (i < k1.length || j < k2.length) {
+            if (j == k2.length || (i < k1.length && k1[i] <= k2[j])) {
+                if (j < k2.length && k1[i] == k2[j]) {
+                    j++;
+                }
+                keys[n] = k1[i];
+                infos[n++] = v1[i++];
+            } else {
+                keys[n] = k2[j];
+                infos[n++] = v2[j++];
+            }
+        }
+        return big.buildFromSorted(Arrays.copyOf(keys, n), Arrays.copyOf(infos, n));
+    }
+
+    @Benchmark
+    public Tree insertOneByOne() {
+        int[] keys = small.keysToArray();
+        String[] infos = small.infoToArray();
+        for (int i = 0; i < keys.length; i++) {
+            big.insert(keys[i], infos[i]);
+        }
+        return big;
+    }
+}
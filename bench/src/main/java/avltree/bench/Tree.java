@@ -0,0 +1,52 @@
+package avltree.bench;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tree
+ * The tree operations measured by the benchmarks.
+ * The trees live in the default package, which code in a package cannot name
+ * (and JMH requires benchmarks to be in one), so every tree is wrapped by a
+ * default-package adapter - see Trees.create().
+ */
+public interface Tree {
+
+    int insert(int k, String i);
+
+    int delete(int k);
+
+    String search(int k);
+
+    /**
+     * @pre search(x) != null
+     * @return [smaller, bigger] - this tree is not usable afterwards
+     */
+    Tree[] split(int x);
+
+    /**
+     * @pre t is of the same implementation, keys(k,t) < keys() or keys(k,t) > keys()
+     */
+    int join(int k, String i, Tree t);
+
+    int[] keysToArray();
+
+    String[] infoToArray();
+
+    int size();
+
+    /**
+     * Union (or intersection) of this tree and t, keeping this tree's info for keys in both,
+     * on pool - or sequentially if pool is null.
+     * @pre t is of the same implementation
+     * @return the result - this tree and t are not usable afterwards
+     * @throws UnsupportedOperationException if the implementation has no set operations
+     */
+    Tree merge(Tree t, boolean union, ForkJoinPool pool);
+
+    /**
+     * @pre keys are sorted and distinct, infos.length == keys.length
+     * @return a new tree of the same implementation holding keys with infos, built in linear time
+     * @throws UnsupportedOperationException if the implementation cannot build from sorted keys
+     */
+    Tree buildFromSorted(int[] keys, String[] infos);
+}
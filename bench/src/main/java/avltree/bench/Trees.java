@@ -0,0 +1,114 @@
+package avltree.bench;
+
+import java.util.Random;
+
+/**
+ * Trees
+ * Creates trees and key sequences for the benchmarks.
+ */
+public final class Trees {
+
+    private Trees() {}
+
+    /**
+     * @param impl - simple name of a default-package tree class, e.g. "AVLTree",
+     *             wrapped by the adapter class impl + "Adapter"
+     * @return a new empty tree
+     */
+    public static Tree create(String impl) {
+        try {
+            return (Tree) Class.forName(impl + "Adapter").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("no adapter for tree implementation " + impl, e);
+        }
+    }
+
+    /**
+     * @param impl - simple name of a default-package thread-safe tree, e.g. "ConcurrentAVLTree",
+     *             wrapped by the adapter class impl + "Adapter"
+     * @return a tree holding keys, inserted in the given order, each with its key as info
+     */
+    public static ConcurrentTree buildConcurrent(String impl, int[] keys) {
+        ConcurrentTree tree;
+        try {
+            tree = (ConcurrentTree) Class.forName(impl + "Adapter").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("no adapter for tree implementation " + impl, e);
+        }
+        for (int k : keys) {
+            tree.insert(k, Integer.toString(k));
+        }
+        return tree;
+    }
+
+    /**
+     * @return a tree holding keys, inserted in the given order, each with its key as info
+     */
+    public static Tree build(String impl, int[] keys) {
+        Tree tree = create(impl);
+        for (int k : keys) {
+            tree.insert(k, Integer.toString(k));
+        }
+        return tree;
+    }
+
+    /**
+     * The n keys 0, 2, 4, ..., 2(n-1) - odd keys are left free for inserting absent keys - in the order of
+     * SEQUENTIAL - ascending
+     * REVERSE - descending
+     * RANDOM - shuffled with the given seed
+     * ZIGZAG - one from the start one from the end, alternately, as ExTester builds its values
+     */
+    public static int[] keys(String distribution, int n, long seed) {
+        int[] keys = new int[n];
+        switch (distribution) {
+            case "SEQUENTIAL":
+                for (int i = 0; i < n; i++) {
+                    keys[i] = 2 * i;
+                }
+                break;
+            case "REVERSE":
+                for (int i = 0; i < n; i++) {
+                    keys[i] = 2 * (n - 1 - i);
+                }
+                break;
+            case "RANDOM":
+                for (int i = 0; i < n; i++) {
+                    keys[i] = 2 * i;
+                }
+                shuffle(keys, seed);
+                break;
+            case "ZIGZAG":
+                int k = 0;
+                for (int i = 0; k < n; i++) {
+                    keys[k++] = 2 * i;
+                    if (k < n) {
+                        keys[k++] = 2 * (n - 1 - i);
+                    }
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unknown key distribution " + distribution);
+        }
+        return keys;
+    }
+
+    /**
+     * @return a copy of keys in random order
+     */
+    public static int[] shuffled(int[] keys, long seed) {
+        int[] copy = keys.clone();
+        shuffle(copy, seed);
+        return copy;
+    }
+
+    private static void shuffle(int[] arr, long seed) {
+        Random rnd = new Random(seed);
+        for (int i = arr.length - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int tmp = arr[i];
+            arr[i] = arr[j];
+            arr[j] = tmp;
+        }
+    }
+}
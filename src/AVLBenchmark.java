@@ -0,0 +1,177 @@
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Random;
+
+/**
+ * AVLBenchmark
+ * Simple measurements of AVLTree's memory and time costs.
+ * Run with: java AVLBenchmark [n] [benchmark name, runs all if omitted]
+ */
+
+public class AVLBenchmark {
+
+    private AVLBenchmark() {}
+
+    private static int[] shuffledKeys(int n, long seed) {
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = i;
+        }
+        Random rnd = new Random(seed);
+        for (int i = n - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int tmp = keys[i];
+            keys[i] = keys[j];
+            keys[j] = tmp;
+        }
+        return keys;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * Counts the distinct virtual node objects reachable from the root.
+     * Iterative, so deep trees don't overflow the stack.
+     */
+    static int countVirtualNodes(AVLTree.IAVLNode root) {
+        IdentityHashMap<AVLTree.IAVLNode, Boolean> seen = new IdentityHashMap<>();
+        ArrayDeque<AVLTree.IAVLNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            AVLTree.IAVLNode node = stack.pop();
+            if (!node.isRealNode()) {
+                seen.put(node, Boolean.TRUE);
+                continue;
+            }
+            stack.push(node.getLeft());
+            stack.push(node.getRight());
+        }
+        return seen.size();
+    }
+
+    /**
+     * Heap footprint of a tree built from n shuffled keys, sharing one value string
+     * so that only the tree's own objects are measured.
+     */
+    static void heapFootprint(int n) {
+        int[] keys = shuffledKeys(n, 42);
+        String info = "info";
+        long before = usedHeap();
+        AVLTree tree = new AVLTree();
+        for (int k : keys) {
+            tree.insert(k, info);
+        }
+        long after = usedHeap();
+        System.out.println("heapFootprint n=" + n);
+        System.out.println("  bytes used:         " + (after - before));
+        System.out.println("  bytes per key:      " + ((after - before) / (double) n));
+        System.out.println("  virtual node objects: " + countVirtualNodes(tree.getRoot()));
+        System.out.println("  (size " + tree.size() + ")");
+    }
+
+    /**
+     * Same as heapFootprint(), for the struct-of-arrays ArrayAVLTree
+     */
+    static void arrayHeapFootprint(int n) {
+        int[] keys = shuffledKeys(n, 42);
+        String info = "info";
+        long before = usedHeap();
+        ArrayAVLTree tree = new ArrayAVLTree();
+        for (int k : keys) {
+            tree.insert(k, info);
+        }
+        long after = usedHeap();
+        System.out.println("arrayHeapFootprint n=" + n);
+        System.out.println("  bytes used:         " + (after - before));
+        System.out.println("  bytes per key:      " + ((after - before) / (double) n));
+        System.out.println("  (size " + tree.size() + ")");
+    }
+
+    /**
+     * Average time of search() over all n keys (hits) and n absent keys (misses),
+     * after a few warm-up rounds. The sink keeps the JIT from dropping the lookups.
+     */
+    static void searchLatency(int n) {
+        int[] keys = shuffledKeys(n, 42);
+        AVLTree tree = new AVLTree();
+        for (int k : keys) {
+            tree.insert(2 * k, "info");
+        }
+        int[] order = shuffledKeys(n, 7);
+        long sink = 0;
+        double hitNs = 0, missNs = 0;
+        for (int round = 0; round < 8; round++) {
+            long start = System.nanoTime();
+            for (int k : order) {
+                sink += tree.search(2 * k) == null ? 0 : 1;
+            }
+            long mid = System.nanoTime();
+            for (int k : order) {
+                sink += tree.search(2 * k + 1) == null ? 0 : 1;
+            }
+            long end = System.nanoTime();
+            if (round >= 3) { //first rounds are warm-up
+                hitNs += (mid - start) / (double) n / 5;
+                missNs += (end - mid) / (double) n / 5;
+            }
+        }
+        System.out.println("searchLatency n=" + n);
+        System.out.println("  hit ns/op:  " + hitNs);
+        System.out.println("  miss ns/op: " + missNs);
+        System.out.println("  (sink " + sink + ")");
+    }
+
+    /**
+     * Average time of insert() of n shuffled keys into an empty tree, and of delete()
+     * of all of them in another order, after a few warm-up rounds.
+     */
+    static void mutationThroughput(int n) {
+        int[] keys = shuffledKeys(n, 42);
+        int[] order = shuffledKeys(n, 7);
+        long sink = 0;
+        double insertNs = 0, deleteNs = 0;
+        for (int round = 0; round < 8; round++) {
+            AVLTree tree = new AVLTree();
+            long start = System.nanoTime();
+            for (int k : keys) {
+                sink += tree.insert(k, "info");
+            }
+            long mid = System.nanoTime();
+            for (int k : order) {
+                sink += tree.delete(k);
+            }
+            long end = System.nanoTime();
+            if (round >= 3) { //first rounds are warm-up
+                insertNs += (mid - start) / (double) n / 5;
+                deleteNs += (end - mid) / (double) n / 5;
+            }
+        }
+        System.out.println("mutationThroughput n=" + n);
+        System.out.println("  insert ns/op: " + insertNs + " (" + (long) (1e9 / insertNs) + " ops/s)");
+        System.out.println("  delete ns/op: " + deleteNs + " (" + (long) (1e9 / deleteNs) + " ops/s)");
+        System.out.println("  (sink " + sink + ")");
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        String only = args.length > 1 ? args[1] : null;
+        if (only == null || only.equals("heapFootprint")) {
+            heapFootprint(n);
+        }
+        if (only == null || only.equals("arrayHeapFootprint")) {
+            arrayHeapFootprint(n);
+        }
+        if (only == null || only.equals("searchLatency")) {
+            searchLatency(n);
+        }
+        if (only == null || only.equals("mutationThroughput")) {
+            mutationThroughput(n);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * AVLForest
+ * A thread-safe map of distinct integer keys and info, partitioned by key range into shards,
+ * each an AVLTree with its own lock - writes to different shards do not contend.
+ *
+ * Shard i holds the keys in [lo(i), hi(i)], the ranges are consecutive and cover every int.
+ * When a shard grows to more than twice the average shard size, part of it is moved to its smaller
+ * neighbour with split() and join(), and the boundary between them moves.
+ *
+ * A boundary only moves while both shards' locks are held, so an operation routes by the published
+ * boundaries, locks the shard, and checks that the key is still in its range (and routes again if not).
+ * Operations on several shards lock them in key order, as does rebalancing, so no two operations deadlock.
+ */
+
+public class AVLForest {
+
+    /**
+     * shards smaller than this are not rebalanced, however uneven the forest is
+     */
+    private static final int MIN_REBALANCE_SIZE = 1024;
+
+    private final Shard[] shards;
+    private volatile int[] starts; //lo of every shard, published after each boundary move - for routing only
+    private final AtomicInteger size = new AtomicInteger(); //for the average shard size of rebalancing
+
+    /**
+     * A key range of the forest and its tree
+     */
+    private static final class Shard {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private AVLTree tree = new AVLTree();
+        private int lo; //guarded by lock
+        private int hi; //guarded by lock
+
+        private Shard(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+    }
+
+    /**
+     * AVLForest Constructor - an empty forest of n shards, splitting the ints into n equal ranges
+     * @pre n >= 1
+     * Complexity: O(n)
+     */
+    public AVLForest(int n) {
+        this.shards = new Shard[n];
+        int[] starts = new int[n];
+        long width = (1L << 32) / n;
+        for (int i = 0; i < n; i++) {
+            starts[i] = (int) (Integer.MIN_VALUE + i * width);
+            long hi = i == n - 1 ? Integer.MAX_VALUE : Integer.MIN_VALUE + (i + 1) * width - 1;
+            this.shards[i] = new Shard(starts[i], (int) hi);
+        }
+        this.starts = starts;
+    }
+
+    /**
+     * @return the index of the shard whose published range holds k
+     * Complexity: O(log n) for n shards - a binary search of the starts
+     */
+    private int route(int k) {
+        int[] starts = this.starts;
+        int lo = 0, hi = starts.length - 1;
+        while (lo < hi) { //last start <= k
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] <= k)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /**
+     * @return the shard of k, with its read or write lock held - the caller unlocks it
+     */
+    private Shard lockShardOf(int k, boolean write) {
+        while (true) {
+            Shard shard = this.shards[route(k)];
+            if (write)
+                shard.lock.writeLock().lock();
+            else
+                shard.lock.readLock().lock();
+            if (shard.lo <= k && k <= shard.hi)
+                return shard;
+            //the boundary moved after we routed - route again
+            if (write)
+                shard.lock.writeLock().unlock();
+            else
+                shard.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * public String search(int k)
+     * returns the info of an item with key k if it exists in the forest
+     * otherwise, returns null
+     * Complexity: O(log n), under the read lock of k's shard
+     */
+    public String search(int k) {
+        Shard shard = lockShardOf(k, false);
+        try {
+            return shard.tree.search(k);
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * public int insert(int k, String i)
+     * inserts an item with key k and info i, returns as AVLTree.insert()
+     * Complexity: O(log n), under the write lock of k's shard (then rebalancing, if the shard became too large)
+     */
+    public int insert(int k, String i) {
+        Shard shard = lockShardOf(k, true);
+        int result;
+        int shardSize;
+        try {
+            result = shard.tree.insert(k, i);
+            shardSize = shard.tree.size();
+        } finally {
+            shard.lock.writeLock().unlock();
+        }
+        if (result != -1) {
+            this.size.incrementAndGet();
+            if (isTooLarge(shardSize))
+                rebalance(shard);
+        }
+        return result;
+    }
+
+    /**
+     * public int delete(int k)
+     * deletes an item with key k if it is there, returns as AVLTree.delete()
+     * Complexity: O(log n), under the write lock of k's shard
+     */
+    public int delete(int k) {
+        Shard shard = lockShardOf(k, true);
+        int result;
+        try {
+            result = shard.tree.delete(k);
+        } finally {
+            shard.lock.writeLock().unlock();
+        }
+        if (result != -1)
+            this.size.decrementAndGet();
+        return result;
+    }
+
+    private boolean isTooLarge(int shardSize) {
+        return shardSize > MIN_REBALANCE_SIZE && shardSize > 2 * (this.size.get() / this.shards.length);
+    }
+
+    /**
+     * Moves part of shard to its smaller neighbour, so that both have about the same size,
+     * if shard is still too large once both are locked.
+     * Complexity: O(log n) - a select, a split, an insert and a join
+     */
+    private void rebalance(Shard shard) {
+        int index = indexOf(shard);
+        Shard left = index > 0 ? this.shards[index - 1] : null;
+        Shard right = index < this.shards.length - 1 ? this.shards[index + 1] : null;
+        //sizes read without the neighbours' locks only choose the side, they are checked again under the locks
+        boolean toRight = left == null || (right != null && right.tree.size() < left.tree.size());
+        Shard first = toRight ? shard : left;
+        Shard second = toRight ? right : shard;
+        if (first == null || second == null) //a single shard
+            return;
+        first.lock.writeLock().lock();
+        second.lock.writeLock().lock();
+        try {
+            Shard neighbour = toRight ? right : left;
+            int move = (shard.tree.size() - neighbour.tree.size()) / 2;
+            if (!isTooLarge(shard.tree.size()) || move <= 0)
+                return;
+            AVLTree from = shard.tree;
+            //pivot - the first key to move right, or the last one to move left
+            int pivot = from.select(toRight ? from.size() - move : move - 1);
+            String info = from.search(pivot);
+            AVLTree[] parts = from.split(pivot);
+            AVLTree moved = toRight ? parts[1] : parts[0];
+            moved.insert(pivot, info);
+            moved.join(neighbour.tree);
+            neighbour.tree = moved;
+            shard.tree = toRight ? parts[0] : parts[1];
+            if (toRight) {
+                shard.hi = pivot - 1;
+                neighbour.lo = pivot;
+            }
+            else {
+                neighbour.hi = pivot;
+                shard.lo = pivot + 1;
+            }
+            publishStart(toRight ? index + 1 : index, toRight ? neighbour.lo : shard.lo);
+        } finally {
+            second.lock.writeLock().unlock();
+            first.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Publishes the new lo of shard i for routing - synchronized, so that rebalancing of other shards
+     * at the same time does not publish a copy without it
+     */
+    private synchronized void publishStart(int i, int lo) {
+        int[] starts = this.starts.clone();
+        starts[i] = lo;
+        this.starts = starts;
+    }
+
+    private int indexOf(Shard shard) {
+        for (int i = 0; ; i++)
+            if (this.shards[i] == shard)
+                return i;
+    }
+
+    /**
+     * Read locks every shard, in key order - the caller unlocks them with unlockAll()
+     */
+    private void lockAll() {
+        for (Shard shard : this.shards)
+            shard.lock.readLock().lock();
+    }
+
+    private void unlockAll() {
+        for (int i = this.shards.length - 1; i >= 0; i--)
+            this.shards[i].lock.readLock().unlock();
+    }
+
+    /**
+     * public int size()
+     * Complexity: O(n) for n shards, under all the read locks
+     */
+    public int size() {
+        lockAll();
+        try {
+            int size = 0;
+            for (Shard shard : this.shards)
+                size += shard.tree.size();
+            return size;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * public int[] keysToArray()
+     * Returns a sorted array which contains all keys in the forest - the shards' keys one after the other.
+     * Complexity: O(size), under all the read locks
+     */
+    public int[] keysToArray() {
+        lockAll();
+        try {
+            int size = 0;
+            for (Shard shard : this.shards)
+                size += shard.tree.size();
+            int[] arr = new int[size];
+            int n = 0;
+            for (Shard shard : this.shards)
+                for (AVLTree.Cursor cursor = shard.tree.cursor(); cursor.isValid(); cursor.next())
+                    arr[n++] = cursor.getKey();
+            return arr;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * public void forEachInRange(int lo, int hi, AVLTree.RangeConsumer consumer)
+     * Passes every item with lo <= key <= hi to consumer, in key order, under all the read locks -
+     * consumer must not write to the forest.
+     * Complexity: O(n log size + k) for n shards and k items in range
+     */
+    public void forEachInRange(int lo, int hi, AVLTree.RangeConsumer consumer) {
+        lockAll();
+        try {
+            for (Shard shard : this.shards)
+                if (shard.hi >= lo && shard.lo <= hi)
+                    shard.tree.forEachInRange(lo, hi, consumer);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * public int select(int i)
+     * Returns the key of rank i (0-based) in the forest - the shard is found by the shards' sizes.
+     * @pre 0 <= i < size()
+     * Complexity: O(n + log size) for n shards, under all the read locks
+     */
+    public int select(int i) {
+        lockAll();
+        try {
+            for (Shard shard : this.shards) {
+                if (i < shard.tree.size())
+                    return shard.tree.select(i);
+                i -= shard.tree.size();
+            }
+            throw new IndexOutOfBoundsException("rank out of range");
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * public int rank(int k)
+     * Returns the number of keys in the forest smaller than k - the sizes of the shards before k's, and its rank there.
+     * Complexity: O(n + log size) for n shards, under all the read locks
+     */
+    public int rank(int k) {
+        lockAll();
+        try {
+            int rank = 0;
+            for (Shard shard : this.shards) {
+                if (k <= shard.hi)
+                    return rank + shard.tree.rank(k);
+                rank += shard.tree.size();
+            }
+            return rank;
+        } finally {
+            unlockAll();
+        }
+    }
+}
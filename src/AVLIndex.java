@@ -0,0 +1,356 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * AVLIndex
+ * A read-only, memory-mapped index file of an AVLTree's items - opening it maps the file instead of
+ * building a tree, and every process mapping the same file shares its pages in the page cache.
+ *
+ * The keys are stored in Eytzinger (BFS) order: slot 1 is the root, the children of slot j are slots 2j and 2j+1,
+ * and the n slots are filled in order, so the in-order walk of slots 1..n visits the keys sorted.
+ * The shape is that of a complete binary tree, so no child pointers are stored, and a subtree's size
+ * (for select() and rank()) is computed from its slot.
+ *
+ * file:   header  - magic "AVLI", n, the offset and length of the heap (HEADER bytes)
+ *         keys    - the key of every slot (4 bytes each)
+ *         offsets - the heap offset of every slot's info (8 bytes each, 8-aligned)
+ *         heap    - every info as its UTF-8 length (4 bytes, -1 for null) and its bytes, in key order.
+ *                   No info crosses a HEAP_CHUNK boundary, so the heap is mapped in chunks of at most 1 GiB.
+ *
+ * An AVLIndex is immutable and only read with absolute gets, so any number of threads can read it.
+ * precondition: the tree has fewer than 2^27 items, and no info is longer than HEAP_CHUNK - 4 bytes in UTF-8
+ */
+
+public class AVLIndex {
+
+    private static final int MAGIC = 0x41564C49; //"AVLI"
+    private static final int HEADER = 32;
+    private static final int HEAP_CHUNK = 1 << 30;
+
+    private final int n;
+    private final int height;           //of the deepest slot, 0 for the root alone
+    private final MappedByteBuffer index; //header, keys and offsets
+    private final long offsetsStart;
+    private final MappedByteBuffer[] heap;
+
+    private AVLIndex(int n, MappedByteBuffer index, MappedByteBuffer[] heap) {
+        this.n = n;
+        this.height = 31 - Integer.numberOfLeadingZeros(n);
+        this.index = index;
+        this.offsetsStart = offsetsStart(n);
+        this.heap = heap;
+    }
+
+    private static long offsetsStart(int n) {
+        return (HEADER + 4L * n + 7) & ~7L;
+    }
+
+    /**
+     * public static void write(AVLTree tree, Path file)
+     * Writes an index file of the items of tree to file (replacing it), with an in-order walk of the tree
+     * alongside an in-order walk of the slots. The keys and offsets are written through a mapping,
+     * the heap sequentially through the channel.
+     * The index is written to a temporary file of its own next to file (so writers of the same file do not share one),
+     * forced to disk and renamed over file - a process which has the old file mapped keeps reading it, instead of
+     * a file truncated and rewritten under it. The file is readable by others, as it is meant to be shared.
+     * Throws IOException if the tree has too many items, or an info too long, for the format.
+     * Complexity: O(n)
+     */
+    public static void write(AVLTree tree, Path file) throws IOException {
+        int n = tree.size();
+        long heapStart = offsetsStart(n) + 8L * n;
+        if (heapStart > Integer.MAX_VALUE)
+            throw new IOException("too many items for an AVLIndex: " + n);
+        Path directory = file.toAbsolutePath().getParent();
+        FileAttribute<?>[] attributes = file.getFileSystem().supportedFileAttributeViews().contains("posix")
+                ? new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-r--r--"))}
+                : new FileAttribute<?>[0];
+        Path temporary = Files.createTempFile(directory, file.getFileName() + ".", ".tmp", attributes);
+        try {
+            writeIndex(tree, n, heapStart, temporary);
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true); //the rename
+        }
+    }
+
+    private static void writeIndex(AVLTree tree, int n, long heapStart, Path temporary) throws IOException {
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_WRITE, 0, heapStart);
+            long offsetsStart = offsetsStart(n);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+            long heapLength = 0;
+            int slot = first(n);
+            for (AVLTree.Cursor cursor = tree.cursor(); cursor.isValid(); cursor.next()) {
+                String value = cursor.getValue();
+                byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+                int entry = 4 + bytes.length;
+                if (entry > HEAP_CHUNK)
+                    throw new IOException("info of " + cursor.getKey() + " too long for an AVLIndex: " + bytes.length + " bytes");
+                if (heapLength / HEAP_CHUNK != (heapLength + entry - 1) / HEAP_CHUNK) //would cross a chunk - start the next one
+                    heapLength = (heapLength / HEAP_CHUNK + 1) * HEAP_CHUNK;
+                index.putInt(HEADER + 4 * (slot - 1), cursor.getKey());
+                index.putLong((int) (offsetsStart + 8L * (slot - 1)), heapLength);
+                if (buffer.capacity() < entry)
+                    buffer = ByteBuffer.allocateDirect(entry);
+                buffer.clear();
+                buffer.putInt(value == null ? -1 : bytes.length).put(bytes).flip();
+                for (long position = heapStart + heapLength; buffer.hasRemaining(); )
+                    position += channel.write(buffer, position);
+                heapLength += entry;
+                slot = successor(slot, n);
+            }
+            index.putInt(0, MAGIC);
+            index.putInt(4, n);
+            index.putLong(8, heapStart);
+            index.putLong(16, heapLength);
+            index.force();
+            channel.force(true); //the heap
+        }
+    }
+
+    /**
+     * public static AVLIndex open(Path file)
+     * Maps an index file written by write(), read-only. The mapping stays valid after the file is closed,
+     * until the AVLIndex is garbage collected.
+     * Throws IOException if file is not an index file.
+     * Complexity: O(1) - pages are read on first access
+     */
+    public static AVLIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER)
+                throw new IOException("not an AVLIndex file");
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+            int n = header.getInt(4);
+            long heapStart = header.getLong(8);
+            long heapLength = header.getLong(16);
+            //heapStart bounds the casts of slot positions to int, heapLength the heap's chunks
+            if (header.getInt(0) != MAGIC || n < 0 || heapStart != offsetsStart(n) + 8L * n || heapStart > Integer.MAX_VALUE
+                    || heapLength < 0 || heapLength > channel.size() - heapStart)
+                throw new IOException("not an AVLIndex file");
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, heapStart);
+            MappedByteBuffer[] heap = new MappedByteBuffer[(int) ((heapLength + HEAP_CHUNK - 1) / HEAP_CHUNK)];
+            for (int c = 0; c < heap.length; c++) {
+                long start = (long) c * HEAP_CHUNK;
+                heap[c] = channel.map(FileChannel.MapMode.READ_ONLY, heapStart + start, Math.min(HEAP_CHUNK, heapLength - start));
+            }
+            return new AVLIndex(n, index, heap);
+        }
+    }
+
+    private int keyAt(int slot) {
+        return this.index.getInt(HEADER + 4 * (slot - 1));
+    }
+
+    private String valueAt(int slot) {
+        long offset = this.index.getLong((int) (this.offsetsStart + 8L * (slot - 1)));
+        MappedByteBuffer chunk = this.heap[(int) (offset / HEAP_CHUNK)];
+        int position = (int) (offset % HEAP_CHUNK);
+        int length = chunk.getInt(position);
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        chunk.get(position + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the number of slots in the subtree of slot - its full levels, and its part of the last level
+     * Complexity: O(1)
+     */
+    private int subtreeSize(int slot) {
+        if (slot > this.n)
+            return 0;
+        int levels = this.height - (31 - Integer.numberOfLeadingZeros(slot)); //levels below slot
+        long firstOfLastLevel = (long) slot << levels;
+        long lastLevel = Math.max(0, Math.min(this.n - firstOfLastLevel + 1, 1L << levels));
+        return (int) ((1L << levels) - 1 + lastLevel);
+    }
+
+    /**
+     * @return the slot of the smallest key in a tree of n slots, or 0 if n == 0
+     */
+    private static int first(int n) {
+        if (n == 0)
+            return 0;
+        int slot = 1;
+        while (2L * slot <= n)
+            slot *= 2;
+        return slot;
+    }
+
+    /**
+     * @return the slot after slot in key order, or 0 after the last one
+     * Complexity: O(1) amortized over an in-order walk
+     */
+    private static int successor(int slot, int n) {
+        if (2L * slot + 1 <= n) { //the leftmost slot of the right subtree
+            slot = 2 * slot + 1;
+            while (2L * slot <= n)
+                slot *= 2;
+            return slot;
+        }
+        while ((slot & 1) == 1) //up while slot is a right child
+            slot >>>= 1;
+        return slot >>> 1;
+    }
+
+    /**
+     * public boolean empty()
+     * Complexity: O(1)
+     */
+    public boolean empty() {
+        return this.n == 0;
+    }
+
+    /**
+     * public int size()
+     * Complexity: O(1)
+     */
+    public int size() {
+        return this.n;
+    }
+
+    /**
+     * public String search(int k)
+     * returns the info of an item with key k if it exists in the index
+     * otherwise, returns null
+     * Complexity: O(log n) - a descent of the slots, the top levels of which share a few pages
+     */
+    public String search(int k) {
+        int slot = 1;
+        while (slot <= this.n) {
+            int key = keyAt(slot);
+            if (key == k)
+                return valueAt(slot);
+            slot = 2 * slot + (k > key ? 1 : 0);
+        }
+        return null;
+    }
+
+    /**
+     * public String min()
+     * Returns the info of the item with the smallest key, or null if the index is empty
+     * Complexity: O(log n)
+     */
+    public String min() {
+        return this.n == 0 ? null : valueAt(first(this.n));
+    }
+
+    /**
+     * public String max()
+     * Returns the info of the item with the largest key, or null if the index is empty
+     * Complexity: O(log n)
+     */
+    public String max() {
+        if (this.n == 0)
+            return null;
+        int slot = 1;
+        while (2L * slot + 1 <= this.n)
+            slot = 2 * slot + 1;
+        return valueAt(slot);
+    }
+
+    /**
+     * public int select(int i)
+     * Returns the key of rank i - the i-th smallest key, counting from 0.
+     * precondition: 0 <= i < size()
+     * Complexity: O(log n) - a descent choosing a side by the left subtree's size, as AVLTree.select()
+     */
+    public int select(int i) {
+        int slot = 1;
+        while (true) {
+            int leftSize = subtreeSize(2 * slot);
+            if (i < leftSize) {
+                slot = 2 * slot;
+            }
+            else if (i == leftSize) {
+                return keyAt(slot);
+            }
+            else {
+                i -= leftSize + 1;
+                slot = 2 * slot + 1;
+            }
+        }
+    }
+
+    /**
+     * public int rank(int k)
+     * Returns the number of keys in the index which are smaller than k (k doesn't have to be in it).
+     * Complexity: O(log n)
+     */
+    public int rank(int k) {
+        int rank = 0;
+        int slot = 1;
+        while (slot <= this.n) {
+            if (keyAt(slot) < k) { //slot and its left subtree are smaller
+                rank += subtreeSize(2 * slot) + 1;
+                slot = 2 * slot + 1;
+            }
+            else {
+                slot = 2 * slot;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * public void forEachInRange(int lo, int hi, AVLTree.RangeConsumer consumer)
+     * Passes every item with lo <= key <= hi to consumer, in key order - from the slot of the
+     * smallest key >= lo, following successors.
+     * Complexity: O(log n + k) for k items in range
+     */
+    public void forEachInRange(int lo, int hi, AVLTree.RangeConsumer consumer) {
+        int slot = 0;
+        for (int s = 1; s <= this.n; ) {
+            if (keyAt(s) >= lo) {
+                slot = s;
+                s = 2 * s;
+            }
+            else {
+                s = 2 * s + 1;
+            }
+        }
+        for (; slot != 0 && keyAt(slot) <= hi; slot = successor(slot, this.n))
+            consumer.accept(keyAt(slot), valueAt(slot));
+    }
+
+    /**
+     * public int[] keysToArray()
+     * Returns a sorted array which contains all keys in the index.
+     * Complexity: O(n)
+     */
+    public int[] keysToArray() {
+        int[] arr = new int[this.n];
+        int i = 0;
+        for (int slot = first(this.n); slot != 0; slot = successor(slot, this.n))
+            arr[i++] = keyAt(slot);
+        return arr;
+    }
+
+    /**
+     * public String[] infoToArray()
+     * Returns an array which contains all info in the index, sorted by their respective keys.
+     * Complexity: O(n)
+     */
+    public String[] infoToArray() {
+        String[] arr = new String[this.n];
+        int i = 0;
+        for (int slot = first(this.n); slot != 0; slot = successor(slot, this.n))
+            arr[i++] = valueAt(slot);
+        return arr;
+    }
+}
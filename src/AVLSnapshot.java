@@ -0,0 +1,257 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * AVLSnapshot
+ * The binary snapshot format of AVLTree.writeTo()/readFrom(), streamed through one direct buffer.
+ *
+ * header:  magic "AVL1" (4 bytes), number of items (varint)
+ * blocks:  of up to BLOCK items in key order, each
+ *          number of items in the block (varint),
+ *          key column - every key as the (unsigned varint) delta from the previous key,
+ *                       the first key of the snapshot from Integer.MIN_VALUE,
+ *          value column - every info as its UTF-8 length + 1 (varint, 0 for null) and its bytes.
+ * Varints are 7 bits a byte, low bits first, the high bit set on every byte but the last.
+ */
+
+final class AVLSnapshot {
+
+    static final int MAGIC = 0x41564C31; //"AVL1"
+    static final int BLOCK = 4096;       //items per block - the reader keeps one block decoded
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private AVLSnapshot() {}
+
+    /**
+     * Encodes a snapshot into a channel. The caller writes the header, then every block with
+     * startBlock(), key() for each key, value() for each info - in the same order, then flush().
+     */
+    static final class Writer {
+        private final WritableByteChannel out;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private long previousKey = Integer.MIN_VALUE;
+
+        Writer(WritableByteChannel out) {
+            this.out = out;
+        }
+
+        void header(int size) throws IOException {
+            ensure(4);
+            this.buffer.putInt(MAGIC);
+            varint(size);
+        }
+
+        void startBlock(int count) throws IOException {
+            varint(count);
+        }
+
+        void key(int k) throws IOException {
+            varint(k - this.previousKey);
+            this.previousKey = k;
+        }
+
+        /**
+         * Writes the length prefix, then encodes value as UTF-8 straight into the buffer
+         * (an unpaired surrogate becomes '?', as String.getBytes() does)
+         */
+        void value(String value) throws IOException {
+            if (value == null) {
+                varint(0);
+                return;
+            }
+            varint(utf8Length(value) + 1L);
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                ensure(4);
+                if (c < 0x80) {
+                    this.buffer.put((byte) c);
+                }
+                else if (c < 0x800) {
+                    this.buffer.put((byte) (0xC0 | (c >> 6)));
+                    this.buffer.put((byte) (0x80 | (c & 0x3F)));
+                }
+                else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, value.charAt(++i));
+                        this.buffer.put((byte) (0xF0 | (cp >> 18)));
+                        this.buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                        this.buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                        this.buffer.put((byte) (0x80 | (cp & 0x3F)));
+                    }
+                    else {
+                        this.buffer.put((byte) '?');
+                    }
+                }
+                else {
+                    this.buffer.put((byte) (0xE0 | (c >> 12)));
+                    this.buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    this.buffer.put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+        }
+
+        private static int utf8Length(String value) {
+            int length = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80)
+                    length += 1;
+                else if (c < 0x800)
+                    length += 2;
+                else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                }
+                else if (Character.isSurrogate(c))
+                    length += 1; //'?'
+                else
+                    length += 3;
+            }
+            return length;
+        }
+
+        private void varint(long v) throws IOException {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                this.buffer.put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            this.buffer.put((byte) v);
+        }
+
+        /**
+         * Makes room for n bytes, writing the buffer out if needed
+         */
+        private void ensure(int n) throws IOException {
+            if (this.buffer.remaining() < n)
+                drain();
+        }
+
+        private void drain() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining())
+                this.out.write(this.buffer);
+            this.buffer.clear();
+        }
+
+        void flush() throws IOException {
+            drain();
+        }
+    }
+
+    /**
+     * Decodes a snapshot from a channel - header() first, then next() for every item, in key order.
+     * One block is decoded at a time into reused arrays.
+     */
+    static final class Reader {
+        private final ReadableByteChannel in;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final int[] keys = new int[BLOCK];
+        private final String[] values = new String[BLOCK];
+        private byte[] bytes = new byte[256]; //a value's bytes, grown as needed
+        private int count;    //items in the decoded block
+        private int position; //next item of the decoded block
+        private long remaining; //items of the snapshot not yet decoded, from header()
+        private long previousKey = Integer.MIN_VALUE;
+        private boolean firstKey = true; //the only key whose delta may be 0 - from Integer.MIN_VALUE
+
+        Reader(ReadableByteChannel in) {
+            this.in = in;
+            this.buffer.flip(); //empty, ready for reading
+        }
+
+        /**
+         * @return the number of items
+         */
+        int header() throws IOException {
+            require(4);
+            if (this.buffer.getInt() != MAGIC)
+                throw new IOException("not an AVLTree snapshot");
+            long size = varint();
+            if (size < 0 || size > Integer.MAX_VALUE)
+                throw new IOException("corrupt AVLTree snapshot size " + Long.toUnsignedString(size));
+            this.remaining = size;
+            return (int) size;
+        }
+
+        /**
+         * Moves to the next item - key() and value() return it.
+         * Throws IOException if the next block is not one writeTo() could have written - more items than header()
+         * left to come, keys not strictly increasing ints, or a length which is not an int.
+         */
+        void next() throws IOException {
+            if (++this.position < this.count)
+                return;
+            long count = varint();
+            if (count <= 0 || count > BLOCK || count > this.remaining)
+                throw new IOException("corrupt AVLTree snapshot block");
+            this.remaining -= count;
+            this.count = (int) count;
+            for (int i = 0; i < this.count; i++) {
+                long delta = varint();
+                if (delta < 0 || (delta == 0 && !this.firstKey) || delta > Integer.MAX_VALUE - this.previousKey)
+                    throw new IOException("corrupt AVLTree snapshot key delta " + Long.toUnsignedString(delta));
+                this.firstKey = false;
+                this.previousKey += delta;
+                this.keys[i] = (int) this.previousKey;
+            }
+            for (int i = 0; i < this.count; i++) {
+                long length = varint() - 1;
+                if (length < -1 || length > Integer.MAX_VALUE)
+                    throw new IOException("corrupt AVLTree snapshot value length " + Long.toUnsignedString(length));
+                this.values[i] = length < 0 ? null : string((int) length);
+            }
+            this.position = 0;
+        }
+
+        int key() {
+            return this.keys[this.position];
+        }
+
+        String value() {
+            return this.values[this.position];
+        }
+
+        private String string(int length) throws IOException {
+            for (int read = 0; read < length; ) {
+                require(1);
+                int n = Math.min(length - read, this.buffer.remaining());
+                if (this.bytes.length < read + n) //grown by the bytes read, not by the length - which may be corrupt
+                    this.bytes = Arrays.copyOf(this.bytes, (int) Math.min(length, Math.max(read + n, 2L * this.bytes.length)));
+                this.buffer.get(this.bytes, read, n);
+                read += n;
+            }
+            return new String(this.bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private long varint() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                require(1);
+                byte b = this.buffer.get();
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0)
+                    return v;
+            }
+            throw new IOException("corrupt AVLTree snapshot varint");
+        }
+
+        /**
+         * Makes sure n bytes are buffered, reading more from the channel if needed
+         */
+        private void require(int n) throws IOException {
+            if (this.buffer.remaining() >= n)
+                return;
+            this.buffer.compact();
+            while (this.buffer.position() < n) {
+                if (this.in.read(this.buffer) < 0)
+                    throw new IOException("truncated AVLTree snapshot");
+            }
+            this.buffer.flip();
+        }
+    }
+}
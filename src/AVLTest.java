@@ -1,4 +1,19 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
 import java.util.stream.Collectors;
 
 class AVLTest extends AVLTree {
@@ -207,6 +222,1006 @@ class AVLTest extends AVLTree {
         System.out.println("testSize Passed!");
     }
 
+    void testSizeRandomized() {
+        // TestTree checks every node's size against calcSize() after each insert/delete
+        for (int tries = 0; tries < 20; tries++) {
+            TestTree tree = new TestTree();
+            int[] values = randomArray(500, -100, 100);
+            for (int x : values) {
+                if (x < 0) {
+                    tree.delete(-x);
+                } else {
+                    tree.insert(x, Integer.toString(x));
+                }
+            }
+            assert (TestTree.calcSize(tree.getRoot()) == tree.size()) : "unexpected size after random operations";
+        }
+        System.out.println("testSizeRandomized Passed!");
+    }
+
+    void testExtremeKeys() {
+        //-1 is the key the virtual node reports, and the int bounds are the edges of successor()/cursor arithmetic
+        int[] extremes = {-1, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE + 1, Integer.MAX_VALUE - 1, -2, 0, 1};
+        Random rnd = new Random(3);
+        for (int tries = 0; tries < 50; tries++) {
+            List<Integer> keys = new ArrayList<>();
+            for (int k : extremes)
+                keys.add(k);
+            for (int i = rnd.nextInt(20); i > 0; i--)
+                keys.add(rnd.nextInt());
+            Collections.shuffle(keys, rnd);
+
+            TestTree tree = new TestTree(); //checks balance and heights/sizes after every insert and delete
+            TreeMap<Integer, String> expected = new TreeMap<>();
+            for (int k : keys) {
+                assert ((tree.insert(k, Integer.toString(k)) == -1) == expected.containsKey(k)) : "unexpected insert " + k;
+                expected.put(k, Integer.toString(k));
+                assert (tree.insert(k, "again") == -1) : "inserted " + k + " twice";
+            }
+            Collections.shuffle(keys, rnd);
+            while (!expected.isEmpty()) {
+                assert (TestTree.calcSize(tree.getRoot()) == tree.size() && tree.size() == expected.size()) : "unexpected size";
+                assert (Test.testParents(tree.getRoot())) : "unexpected parents";
+                assert (tree.min().equals(expected.firstEntry().getValue())) : "unexpected min";
+                assert (tree.max().equals(expected.lastEntry().getValue())) : "unexpected max";
+                assert (Arrays.equals(tree.keysToArray(), expected.keySet().stream().mapToInt(Integer::intValue).toArray())) : "unexpected keys";
+                for (int k : expected.keySet()) {
+                    assert (tree.search(k).equals(expected.get(k))) : "unexpected search " + k;
+                    AVLTree.Cursor cursor = tree.cursor(k, Integer.MAX_VALUE);
+                    assert (cursor.isValid() && cursor.getKey() == k) : "unexpected cursor on " + k;
+                    Integer successor = expected.higherKey(k);
+                    assert (cursor.next() == (successor != null)) : "unexpected successor of " + k;
+                    assert (successor == null || cursor.getKey() == successor) : "unexpected successor of " + k;
+                }
+                int k = keys.remove(keys.size() - 1);
+                assert ((tree.delete(k) == -1) == !expected.containsKey(k)) : "unexpected delete " + k;
+                expected.remove(k);
+                assert (tree.search(k) == null && tree.delete(k) == -1) : "deleted " + k + " is still found";
+            }
+            assert (tree.empty() && tree.min() == null && tree.max() == null && tree.keysToArray().length == 0) : "tree not empty";
+        }
+        System.out.println("testExtremeKeys Passed!");
+    }
+
+    void testSelectAndRank() {
+        int[] values = randomArray(200, -100, 100);
+        AVLTree tree = arrayToTree(values);
+        int[] keys = tree.keysToArray();
+        for (int i = 0; i < keys.length; i++) {
+            assert (tree.select(i) == keys[i]) : "unexpected select value";
+            assert (tree.rank(keys[i]) == i) : "unexpected rank value";
+        }
+        for (int k = -110; k <= 110; k++) {
+            int below = 0;
+            for (int key : keys) {
+                below += key < k ? 1 : 0;
+            }
+            assert (tree.rank(k) == below) : "unexpected rank of " + k;
+            for (int hi = k - 1; hi <= k + 30; hi++) {
+                int inRange = 0;
+                for (int key : keys) {
+                    inRange += (key >= k && key <= hi) ? 1 : 0;
+                }
+                assert (tree.countInRange(k, hi) == inRange) : "unexpected count in [" + k + ", " + hi + "]";
+            }
+        }
+        assert (new AVLTree().rank(5) == 0) : "rank in empty tree";
+        assert (new AVLTree().countInRange(Integer.MIN_VALUE, Integer.MAX_VALUE) == 0) : "count in empty tree";
+        assert (tree.countInRange(Integer.MIN_VALUE, Integer.MAX_VALUE) == tree.size()) : "count of the whole range";
+        System.out.println("testSelectAndRank Passed!");
+    }
+
+    void testCursor() {
+        int[] values = randomArray(200, -100, 100);
+        AVLTree tree = arrayToTree(values);
+        int[] keys = tree.keysToArray();
+
+        AVLTree.Cursor cursor = tree.cursor();
+        for (int key : keys) {
+            assert (cursor.isValid() && cursor.getKey() == key) : "unexpected key moving forward";
+            cursor.next();
+        }
+        assert (!cursor.isValid()) : "cursor valid after the last key";
+
+        cursor.seekLast();
+        for (int i = keys.length - 1; i >= 0; i--) {
+            assert (cursor.isValid() && cursor.getKey() == keys[i]) : "unexpected key moving backward";
+            assert (cursor.getValue().equals(Integer.toString(keys[i]))) : "unexpected value";
+            cursor.prev();
+        }
+        assert (!cursor.isValid()) : "cursor valid before the first key";
+
+        for (int k = -110; k <= 110; k++) {
+            int expected = Integer.MIN_VALUE;
+            for (int i = keys.length - 1; i >= 0 && keys[i] >= k; i--)
+                expected = keys[i];
+            boolean valid = cursor.seek(k);
+            assert (valid == (expected != Integer.MIN_VALUE)) : "unexpected seek result for " + k;
+            assert (!valid || cursor.getKey() == expected) : "unexpected seek key for " + k;
+        }
+
+        assert (!new AVLTree().cursor().isValid()) : "cursor valid on empty tree";
+        System.out.println("testCursor Passed!");
+    }
+
+    void testRangeScan() {
+        int[] values = randomArray(200, -100, 100);
+        AVLTree tree = arrayToTree(values);
+        int[] keys = tree.keysToArray();
+
+        for (int lo = -110; lo <= 110; lo += 7) {
+            for (int hi = lo - 3; hi <= 110; hi += 11) {
+                List<Integer> expected = new ArrayList<>();
+                for (int key : keys)
+                    if (lo <= key && key <= hi)
+                        expected.add(key);
+
+                List<Integer> visited = new ArrayList<>();
+                tree.forEachInRange(lo, hi, (key, value) -> {
+                    assert (value.equals(Integer.toString(key))) : "unexpected value";
+                    visited.add(key);
+                });
+                assert (visited.equals(expected)) : "unexpected forEachInRange in [" + lo + ", " + hi + "]";
+
+                AVLTree.Cursor cursor = tree.cursor(lo, hi);
+                for (int key : expected) {
+                    assert (cursor.isValid() && cursor.getKey() == key) : "unexpected bounded cursor key";
+                    cursor.next();
+                }
+                assert (!cursor.isValid()) : "bounded cursor passed hi";
+                if (!expected.isEmpty()) {
+                    assert (cursor.seekLast() && cursor.getKey() == expected.get(expected.size() - 1)) : "unexpected seekLast";
+                    assert (cursor.seekFirst() && cursor.getKey() == expected.get(0)) : "unexpected seekFirst";
+                    assert (!cursor.prev()) : "bounded cursor passed lo";
+                }
+                assert (tree.countInRange(lo, hi) == expected.size()) : "unexpected countInRange";
+            }
+        }
+        System.out.println("testRangeScan Passed!");
+    }
+
+    void testBuildFromSorted() {
+        for (int n = 0; n < 70; n++) {
+            int[] keys = new int[n];
+            String[] values = new String[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = 3 * i - n;
+                values[i] = Integer.toString(keys[i]);
+            }
+            AVLTree tree = AVLTree.buildFromSorted(keys, values);
+            TestTree.check_if_balanced(tree.getRoot());
+            assert TestTree.sanitizeTree(tree.getRoot());
+            assert (tree.empty() || Test.testParents(tree.getRoot())) : "unexpected parents";
+            assert (tree.size() == n) : "unexpected size";
+            assert (Arrays.equals(tree.keysToArray(), keys)) : "unexpected keys";
+            assert (Arrays.equals(tree.infoToArray(), values)) : "unexpected info";
+            assert (n == 0 || tree.min().equals(values[0]) && tree.max().equals(values[n - 1])) : "unexpected min/max";
+
+            tree.insert(2 * n, "new");
+            tree.delete(keys.length > 0 ? keys[0] : 2 * n);
+            TestTree.check_if_balanced(tree.getRoot());
+            assert TestTree.sanitizeTree(tree.getRoot());
+        }
+        System.out.println("testBuildFromSorted Passed!");
+    }
+
+    void testInsertAll() {
+        Random rnd = new Random(12);
+        for (int tries = 0; tries < 60; tries++) {
+            int[] initial = randomArray(rnd.nextInt(300), 0, 1000);
+            int[] batch = randomArray(rnd.nextInt(tries < 30 ? 60 : 600), 0, 1000);
+            if (tries % 3 == 0)
+                Arrays.sort(batch);
+            String[] values = new String[batch.length];
+            for (int i = 0; i < batch.length; i++)
+                values[i] = "batch" + i;
+
+            AVLTree expected = arrayToTree(initial);
+            for (int i = 0; i < batch.length; i++)
+                expected.insert(batch[i], values[i]);
+
+            AVLTree tree = arrayToTree(initial);
+            int initialSize = tree.size();
+            assert (tree.insertAll(batch, values) == expected.size() - initialSize) : "unexpected number of inserted items";
+            TestTree.check_if_balanced(tree.getRoot());
+            assert TestTree.sanitizeTree(tree.getRoot());
+            assert (tree.empty() || Test.testParents(tree.getRoot())) : "unexpected parents";
+            assert (Arrays.equals(tree.keysToArray(), expected.keysToArray())) : "unexpected keys";
+            assert (Arrays.equals(tree.infoToArray(), expected.infoToArray())) : "unexpected info";
+            assert (Objects.equals(tree.min(), expected.min()) && Objects.equals(tree.max(), expected.max())) : "unexpected min/max";
+            assert (tree.size() == expected.size()) : "unexpected size";
+        }
+        System.out.println("testInsertAll Passed!");
+    }
+
+    void testDeleteRangeAndAll() {
+        Random rnd = new Random(13);
+        for (int tries = 0; tries < 200; tries++) {
+            int[] initial = randomArray(rnd.nextInt(300), 0, 500);
+            AVLTree expected = arrayToTree(initial);
+            AVLTree tree = arrayToTree(initial);
+            int removed = 0;
+            if (tries % 2 == 0) {
+                int lo = rnd.nextInt(520) - 10;
+                int hi = lo + rnd.nextInt(200) - 20;
+                for (int k = lo; k <= hi; k++)
+                    removed += expected.delete(k) == -1 ? 0 : 1;
+                assert (tree.deleteRange(lo, hi) == removed) : "unexpected deleteRange count";
+            } else {
+                int[] batch = randomArray(rnd.nextInt(400), 0, 500);
+                for (int k : batch)
+                    removed += expected.delete(k) == -1 ? 0 : 1;
+                assert (tree.deleteAll(batch) == removed) : "unexpected deleteAll count";
+            }
+            TestTree.check_if_balanced(tree.getRoot());
+            assert TestTree.sanitizeTree(tree.getRoot());
+            assert (tree.empty() || Test.testParents(tree.getRoot())) : "unexpected parents";
+            assert (Arrays.equals(tree.keysToArray(), expected.keysToArray())) : "unexpected keys";
+            assert (Arrays.equals(tree.infoToArray(), expected.infoToArray())) : "unexpected info";
+            assert (Objects.equals(tree.min(), expected.min()) && Objects.equals(tree.max(), expected.max())) : "unexpected min/max";
+            assert (tree.size() == expected.size()) : "unexpected size";
+        }
+        System.out.println("testDeleteRangeAndAll Passed!");
+    }
+
+    void testSetOperations() {
+        Random rnd = new Random(14);
+        AVLTree.ConflictResolver resolver = (key, mine, theirs) -> mine + "|" + theirs;
+        for (int tries = 0; tries < 150; tries++) {
+            //the last tries are large enough for the trees to be divided by split/join before the one by one cutoff
+            int size = tries < 50 ? 20 : tries < 100 ? 400 : 6000;
+            int[] keys1 = randomArray(rnd.nextInt(size), 0, size);
+            int[] keys2 = randomArray(rnd.nextInt(size), 0, size);
+            TreeMap<Integer, String> map1 = new TreeMap<>();
+            TreeMap<Integer, String> map2 = new TreeMap<>();
+            for (int k : keys1)
+                map1.put(k, Integer.toString(k));
+            for (int k : keys2)
+                map2.put(k, Integer.toString(k));
+
+            TreeMap<Integer, String> expected = new TreeMap<>();
+            AVLTree tree = new AVLTree();
+            AVLTree other = new AVLTree();
+            for (int k : keys1)
+                tree.insert(k, Integer.toString(k));
+            for (int k : keys2)
+                other.insert(k, Integer.toString(k));
+            switch (tries % 3) {
+                case 0:
+                    expected.putAll(map2);
+                    map1.forEach((k, v) -> expected.merge(k, v, (theirs, mine) -> mine + "|" + theirs));
+                    tree.union(other, resolver);
+                    break;
+                case 1:
+                    map1.forEach((k, v) -> { if (map2.containsKey(k)) expected.put(k, v + "|" + map2.get(k)); });
+                    tree.intersect(other, resolver);
+                    break;
+                default:
+                    expected.putAll(map1);
+                    expected.keySet().removeAll(map2.keySet());
+                    tree.difference(other);
+            }
+            TestTree.check_if_balanced(tree.getRoot());
+            assert TestTree.sanitizeTree(tree.getRoot());
+            assert (tree.empty() || Test.testParents(tree.getRoot())) : "unexpected parents";
+            assert (Arrays.equals(tree.keysToArray(), expected.keySet().stream().mapToInt(Integer::intValue).toArray())) : "unexpected keys";
+            assert (Arrays.equals(tree.infoToArray(), expected.values().toArray(new String[0]))) : "unexpected info";
+            assert (expected.isEmpty() ? tree.min() == null : tree.min().equals(expected.firstEntry().getValue())) : "unexpected min";
+            assert (expected.isEmpty() ? tree.max() == null : tree.max().equals(expected.lastEntry().getValue())) : "unexpected max";
+            assert (tree.size() == expected.size()) : "unexpected size";
+        }
+        System.out.println("testSetOperations Passed!");
+    }
+
+    void testParallelSetOperations() {
+        Random rnd = new Random(15);
+        AVLTree.ConflictResolver resolver = (key, mine, theirs) -> mine + "|" + theirs;
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (int tries = 0; tries < 6; tries++) {
+            //large enough for several levels above PARALLEL_CUTOFF
+            int[] keys1 = rnd.ints(0, 400000).distinct().limit(60000 + rnd.nextInt(100000)).sorted().toArray();
+            int[] keys2 = rnd.ints(0, 400000).distinct().limit(60000 + rnd.nextInt(100000)).sorted().toArray();
+            String[] info1 = Arrays.stream(keys1).mapToObj(k -> "a" + k).toArray(String[]::new);
+            String[] info2 = Arrays.stream(keys2).mapToObj(k -> "b" + k).toArray(String[]::new);
+
+            AVLTree expected = AVLTree.buildFromSorted(keys1, info1);
+            AVLTree tree = AVLTree.buildFromSorted(keys1, info1);
+            if (tries % 2 == 0) {
+                expected.union(AVLTree.buildFromSorted(keys2, info2), resolver);
+                tree.parallelUnion(AVLTree.buildFromSorted(keys2, info2), resolver, pool);
+            } else {
+                expected.intersect(AVLTree.buildFromSorted(keys2, info2), resolver);
+                tree.parallelIntersect(AVLTree.buildFromSorted(keys2, info2), resolver, pool);
+            }
+            TestTree.check_if_balanced(tree.getRoot());
+            assert TestTree.sanitizeTree(tree.getRoot());
+            assert (tree.empty() || Test.testParents(tree.getRoot())) : "unexpected parents";
+            assert (Arrays.equals(tree.keysToArray(), expected.keysToArray())) : "unexpected keys";
+            assert (Arrays.equals(tree.infoToArray(), expected.infoToArray())) : "unexpected info";
+            assert (Objects.equals(tree.min(), expected.min()) && Objects.equals(tree.max(), expected.max())) : "unexpected min/max";
+        }
+        pool.shutdown();
+        System.out.println("testParallelSetOperations Passed!");
+    }
+
+    void testSplitView() {
+        int[] values = randomArray(200, -100, 100);
+        AVLTree tree = arrayToTree(values);
+        int[] keys = tree.keysToArray();
+        for (int x = -105; x <= 105; x += 3) {
+            AVLTree.View[] views = tree.splitView(x);
+            final int split = x;
+            int[] below = Arrays.stream(keys).filter(k -> k < split).toArray();
+            int[] above = Arrays.stream(keys).filter(k -> k > split).toArray();
+            assert (Arrays.equals(views[0].keysToArray(), below)) : "unexpected keys below " + x;
+            assert (Arrays.equals(views[1].keysToArray(), above)) : "unexpected keys above " + x;
+            assert (views[0].size() == below.length && views[1].size() == above.length) : "unexpected view size";
+            assert (views[0].empty() == (below.length == 0)) : "unexpected view empty()";
+            assert (below.length == 0 ? views[0].max() == null : views[0].max().equals(Integer.toString(below[below.length - 1]))) : "unexpected view max";
+            assert (above.length == 0 ? views[1].min() == null : views[1].min().equals(Integer.toString(above[0]))) : "unexpected view min";
+            assert (views[0].search(x) == null && views[1].search(x) == null) : "x in a view";
+
+            AVLTree copy = views[1].copy();
+            assert TestTree.sanitizeTree(copy.getRoot());
+            assert (Arrays.equals(copy.keysToArray(), above)) : "unexpected copy";
+        }
+        assert (Arrays.equals(tree.keysToArray(), keys)) : "tree changed by splitView";
+        assert (tree.splitView(Integer.MIN_VALUE)[0].empty() && tree.splitView(Integer.MAX_VALUE)[1].empty()) : "unexpected extreme views";
+
+        //views follow changes of the tree
+        AVLTree.View upper = tree.splitView(0)[1];
+        tree.insert(1000, "1000");
+        assert (upper.max().equals("1000")) : "view did not follow the tree";
+        System.out.println("testSplitView Passed!");
+    }
+
+    void testPersistentAVLTree() {
+        Random rnd = new Random(17);
+        PersistentAVLTree tree = new PersistentAVLTree();
+        TreeMap<Integer, String> model = new TreeMap<>();
+        List<PersistentAVLTree> versions = new ArrayList<>();
+        List<TreeMap<Integer, String>> models = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            int k = rnd.nextInt(500);
+            if (rnd.nextInt(3) > 0) {
+                tree = tree.insert(k, "v" + i);
+                model.putIfAbsent(k, "v" + i);
+            } else {
+                tree = tree.delete(k);
+                model.remove(k);
+            }
+            if (i % 100 == 0) {
+                versions.add(tree.snapshot());
+                models.add(new TreeMap<>(model));
+            }
+        }
+        //every version is unchanged by the operations after it
+        for (int v = 0; v < versions.size(); v++) {
+            PersistentAVLTree version = versions.get(v);
+            TreeMap<Integer, String> expected = models.get(v);
+            assert (Arrays.equals(version.keysToArray(), expected.keySet().stream().mapToInt(Integer::intValue).toArray())) : "unexpected keys of version " + v;
+            assert (Arrays.equals(version.infoToArray(), expected.values().toArray(new String[0]))) : "unexpected info of version " + v;
+            assert (version.size() == expected.size()) : "unexpected size of version " + v;
+            assert version.isValidAVL() : "unbalanced version " + v;
+        }
+        assert (Objects.equals(tree.min(), model.firstEntry().getValue()) && Objects.equals(tree.max(), model.lastEntry().getValue())) : "unexpected min/max";
+
+        for (int x = -10; x < 510; x += 13) {
+            PersistentAVLTree[] parts = tree.split(x);
+            assert (Arrays.equals(parts[0].keysToArray(), model.headMap(x).keySet().stream().mapToInt(Integer::intValue).toArray())) : "unexpected split below " + x;
+            assert (Arrays.equals(parts[1].keysToArray(), model.tailMap(x, false).keySet().stream().mapToInt(Integer::intValue).toArray())) : "unexpected split above " + x;
+            assert (parts[0].isValidAVL() && parts[1].isValidAVL()) : "unbalanced split";
+            PersistentAVLTree joined = parts[0].join(x, "x", parts[1]);
+            assert joined.isValidAVL() : "unbalanced join";
+            assert (joined.search(x).equals("x") && joined.size() == model.headMap(x).size() + model.tailMap(x, false).size() + 1) : "unexpected join";
+        }
+        assert (Arrays.equals(tree.keysToArray(), model.keySet().stream().mapToInt(Integer::intValue).toArray())) : "tree changed by split/join";
+        System.out.println("testPersistentAVLTree Passed!");
+    }
+
+    private static final int STRESS_WRITERS = 4;
+    private static final int STRESS_KEYS_PER_WRITER = 2000;
+
+    /**
+     * Runs STRESS_WRITERS writers and 2 readers on a thread-safe tree, reached through its insert, delete and search.
+     * Each writer inserts and deletes its own keys (key % STRESS_WRITERS == w), checking every result against
+     * the key's presence (only this writer changes it), and ends with the even ones (key / STRESS_WRITERS) in.
+     * Meanwhile each reader calls reader with its own Random and a list to add failures to, until the writers are done.
+     */
+    private static void stressConcurrentTree(BiFunction<Integer, String, Integer> insert, IntUnaryOperator delete,
+                                             IntFunction<String> search, BiConsumer<Random, List<String>> reader)
+            throws InterruptedException {
+        AtomicBoolean done = new AtomicBoolean();
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < STRESS_WRITERS; w++) {
+            final int writer = w;
+            threads.add(new Thread(() -> {
+                Random rnd = new Random(writer);
+                for (int i = 0; i < 20000; i++) {
+                    int k = rnd.nextInt(STRESS_KEYS_PER_WRITER) * STRESS_WRITERS + writer;
+                    boolean present = search.apply(k) != null;
+                    boolean add = rnd.nextBoolean();
+                    int result = add ? insert.apply(k, Integer.toString(k)) : delete.applyAsInt(k);
+                    if ((result == -1) != (add == present))
+                        failures.add((add ? "insert of " : "delete of ") + k + " did not match its presence");
+                }
+                for (int i = 0; i < STRESS_KEYS_PER_WRITER; i++) {
+                    int k = i * STRESS_WRITERS + writer;
+                    if (i % 2 == 0)
+                        insert.apply(k, Integer.toString(k));
+                    else
+                        delete.applyAsInt(k);
+                }
+            }));
+        }
+        for (int r = 0; r < 2; r++) {
+            final int seed = 100 + r;
+            threads.add(new Thread(() -> {
+                Random rnd = new Random(seed);
+                while (!done.get())
+                    reader.accept(rnd, failures);
+            }));
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (int w = 0; w < STRESS_WRITERS; w++)
+            threads.get(w).join();
+        done.set(true);
+        for (Thread thread : threads)
+            thread.join();
+        assert failures.isEmpty() : failures.get(0);
+    }
+
+    void testLockFreeAVLTree() throws InterruptedException {
+        LockFreeAVLTree tree = new LockFreeAVLTree();
+        //readers check that every version they see is a valid AVL tree, and that scans are consistent
+        stressConcurrentTree(tree::insert, tree::delete, tree::search, (rnd, failures) -> {
+            PersistentAVLTree version = tree.snapshot();
+            if (!version.isValidAVL())
+                failures.add("unbalanced version");
+            int[] count = new int[1];
+            version.forEachInRange(Integer.MIN_VALUE, Integer.MAX_VALUE, (key, value) -> {
+                if (!value.equals(Integer.toString(key)))
+                    failures.add("unexpected value");
+                count[0]++;
+            });
+            if (count[0] != version.size())
+                failures.add("scan does not match size");
+        });
+
+        int[] keys = tree.keysToArray();
+        assert (keys.length == STRESS_WRITERS * STRESS_KEYS_PER_WRITER / 2) : "lost or duplicated writes";
+        for (int k : keys)
+            assert ((k / STRESS_WRITERS) % 2 == 0) : "unexpected key " + k;
+        assert tree.snapshot().isValidAVL() : "unbalanced tree";
+        System.out.println("testLockFreeAVLTree Passed!");
+    }
+
+    void testConcurrentAVLTree() throws InterruptedException {
+        ConcurrentAVLTree tree = new ConcurrentAVLTree();
+        int bound = STRESS_WRITERS * STRESS_KEYS_PER_WRITER;
+        //readers check that optimistic reads only return values of the searched key
+        stressConcurrentTree(tree::insert, tree::delete, tree::search, (rnd, failures) -> {
+            int k = rnd.nextInt(bound);
+            String value = tree.search(k);
+            if (value != null && !value.equals(Integer.toString(k)))
+                failures.add("search of " + k + " returned " + value);
+            if (tree.size() < 0 || tree.size() > bound)
+                failures.add("unexpected size");
+        });
+
+        int[] keys = tree.keysToArray();
+        assert (keys.length == bound / 2 && tree.size() == keys.length) : "lost or duplicated writes";
+        for (int k : keys)
+            assert ((k / STRESS_WRITERS) % 2 == 0 && tree.search(k).equals(Integer.toString(k))) : "unexpected key " + k;
+        assert (tree.min().equals("0") && tree.max().equals(Integer.toString(keys[keys.length - 1]))) : "unexpected min/max";
+
+        //a write which throws while combined - its own writer gets the exception, and no writer is left waiting
+        ConcurrentAVLTree failing = new ConcurrentAVLTree(new AVLTree() {
+            @Override
+            public int insert(int k, String i) {
+                if (k % 100 == 13)
+                    throw new IllegalStateException("insert of " + k);
+                return super.insert(k, i);
+            }
+        });
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < STRESS_WRITERS; w++) {
+            final int writer = w;
+            threads.add(new Thread(() -> {
+                for (int k = writer * 1000; k < writer * 1000 + 1000; k++) {
+                    try {
+                        failing.insert(k, Integer.toString(k));
+                        if (k % 100 == 13)
+                            failures.add("insert of " + k + " did not throw");
+                    } catch (IllegalStateException e) {
+                        if (!e.getMessage().equals("insert of " + k))
+                            failures.add("insert of " + k + " threw the exception of " + e.getMessage());
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads) {
+            thread.join(60000);
+            assert !thread.isAlive() : "writer left waiting for a failed write";
+        }
+        assert failures.isEmpty() : failures.get(0);
+        assert (failing.size() == STRESS_WRITERS * 990) : "unexpected size after failed writes";
+        System.out.println("testConcurrentAVLTree Passed!");
+    }
+
+    void testAVLForest() throws InterruptedException {
+        //skewed keys - all in one of the initial ranges, so the shards have to be rebalanced
+        Random rnd = new Random(20);
+        AVLForest forest = new AVLForest(4);
+        TreeMap<Integer, String> model = new TreeMap<>();
+        for (int i = 0; i < 40000; i++) {
+            int k = rnd.nextInt(20000);
+            if (rnd.nextInt(4) > 0) {
+                assert ((forest.insert(k, Integer.toString(k)) == -1) == model.containsKey(k)) : "unexpected insert result";
+                model.put(k, Integer.toString(k));
+            } else {
+                assert ((forest.delete(k) == -1) == !model.containsKey(k)) : "unexpected delete result";
+                model.remove(k);
+            }
+        }
+        int[] expected = model.keySet().stream().mapToInt(Integer::intValue).toArray();
+        assert (Arrays.equals(forest.keysToArray(), expected)) : "unexpected keys";
+        assert (forest.size() == expected.length) : "unexpected size";
+        for (int i = 0; i < expected.length; i += 97)
+            assert (forest.select(i) == expected[i] && forest.rank(expected[i]) == i) : "unexpected select/rank";
+        for (int k = -5; k < 20005; k += 101)
+            assert (Objects.equals(forest.search(k), model.get(k))) : "unexpected search";
+        List<Integer> scanned = new ArrayList<>();
+        forest.forEachInRange(5000, 15000, (key, value) -> scanned.add(key));
+        assert (scanned.equals(new ArrayList<>(model.subMap(5000, true, 15000, true).keySet()))) : "unexpected range scan";
+
+        //concurrent writers on disjoint keys, while the shards are rebalanced under them
+        AVLForest shared = new AVLForest(8);
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            final int writer = w;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 20000; i++)
+                    shared.insert(i * 4 + writer, "v");
+                for (int i = 0; i < 20000; i += 2)
+                    shared.delete(i * 4 + writer);
+            }));
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+        int[] keys = shared.keysToArray();
+        assert (keys.length == 40000 && shared.size() == 40000) : "lost or duplicated writes";
+        for (int i = 0; i < keys.length; i++)
+            assert ((keys[i] / 4) % 2 == 1 && (i == 0 || keys[i - 1] < keys[i])) : "unexpected key " + keys[i];
+        System.out.println("testAVLForest Passed!");
+    }
+
+    void testSnapshotRoundTrip() throws IOException {
+        Random rnd = new Random(21);
+        for (int n : new int[]{0, 1, 2, 100, AVLSnapshot.BLOCK, 3 * AVLSnapshot.BLOCK + 17}) {
+            AVLTree tree = new AVLTree();
+            tree.insert(Integer.MIN_VALUE, "min");
+            tree.insert(Integer.MAX_VALUE, null);
+            for (int i = 0; i < n; i++)
+                tree.insert(rnd.nextInt(), i % 5 == 0 ? "\u00e9\u4e2d\ud83d\ude00" + i : Integer.toString(i));
+            tree.insert(7, "unpaired \ud83d surrogate");
+            tree.insert(8, String.join("", Collections.nCopies(70000, "\u4e2d"))); //larger than the buffer
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            tree.writeTo(Channels.newChannel(bytes));
+            AVLTree copy = AVLTree.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+            TestTree.check_if_balanced(copy.getRoot());
+            assert TestTree.sanitizeTree(copy.getRoot());
+            assert Test.testParents(copy.getRoot()) : "unexpected parents";
+            assert (Arrays.equals(copy.keysToArray(), tree.keysToArray())) : "unexpected keys";
+            String[] info = tree.infoToArray();
+            info[Arrays.binarySearch(tree.keysToArray(), 7)] = "unpaired ? surrogate"; //as String.getBytes() encodes it
+            assert (Arrays.equals(copy.infoToArray(), info)) : "unexpected info";
+            assert ("min".equals(copy.min()) && copy.max() == null) : "unexpected min/max";
+
+            byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 1);
+            try {
+                AVLTree.readFrom(Channels.newChannel(new ByteArrayInputStream(truncated)));
+                assert false : "read a truncated snapshot";
+            } catch (IOException e) {
+                //expected
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new AVLTree().writeTo(Channels.newChannel(bytes));
+        assert AVLTree.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()))).empty() : "unexpected items";
+
+        //corrupt snapshots, as varints after the magic: size, block size, key deltas, value lengths + 1
+        long[][] corrupt = {
+                {0xFFFFFFFFL},                         //a size which is a negative int
+                {1, 1, 5, (1L << 31) + 2},             //a value length above Integer.MAX_VALUE
+                {2, 2, 5, 0, 0, 0},                    //a key delta of 0 - a duplicate key
+                {2, 2, (1L << 32) - 1, 1, 0, 0},       //a key past Integer.MAX_VALUE
+                {1, 1, 5, 1L << 30},                   //a value length longer than the snapshot
+                {1, 2, 5, 1, 0, 0},                    //a block of more items than the size left
+        };
+        for (long[] varints : corrupt) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(AVLSnapshot.MAGIC >>> 24);
+            out.write(AVLSnapshot.MAGIC >>> 16);
+            out.write(AVLSnapshot.MAGIC >>> 8);
+            out.write(AVLSnapshot.MAGIC);
+            for (long v : varints) {
+                for (; (v & ~0x7FL) != 0; v >>>= 7)
+                    out.write((int) (v & 0x7F) | 0x80);
+                out.write((int) v);
+            }
+            try {
+                AVLTree.readFrom(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+                assert false : "read a corrupt snapshot " + Arrays.toString(varints);
+            } catch (IOException e) {
+                //expected
+            }
+        }
+        System.out.println("testSnapshotRoundTrip Passed!");
+    }
+
+    void testAVLIndex() throws IOException {
+        Random rnd = new Random(22);
+        Path file = Files.createTempFile("avl", ".index");
+        try {
+            AVLIndex previous = null; //kept open while the file is replaced - it must keep reading its own items
+            int[] previousKeys = null;
+            for (int n : new int[]{0, 1, 2, 3, 7, 8, 9, 100, 1000, 4097}) {
+                AVLTree tree = new AVLTree();
+                while (tree.size() < n)
+                    tree.insert(rnd.nextInt(4 * n + 1) - 2 * n, rnd.nextInt(10) == 0 ? null : "\u4e2d" + tree.size());
+                AVLIndex.write(tree, file);
+                AVLIndex index = AVLIndex.open(file);
+                int[] keys = tree.keysToArray();
+                assert (previous == null || Arrays.equals(previous.keysToArray(), previousKeys)) : "replaced index changed";
+                previous = index;
+                previousKeys = keys;
+                assert (index.size() == n && index.empty() == (n == 0)) : "unexpected size";
+                assert (Arrays.equals(index.keysToArray(), keys)) : "unexpected keys";
+                assert (Arrays.equals(index.infoToArray(), tree.infoToArray())) : "unexpected info";
+                assert (Objects.equals(index.min(), tree.min()) && Objects.equals(index.max(), tree.max())) : "unexpected min/max";
+                for (int i = 0; i < n; i++)
+                    assert (index.select(i) == keys[i] && index.rank(keys[i]) == i) : "unexpected select/rank " + i;
+                for (int k = -2 * n - 2; k <= 2 * n + 2; k++) {
+                    assert (Objects.equals(index.search(k), tree.search(k))) : "unexpected search " + k;
+                    assert (index.rank(k) == tree.rank(k)) : "unexpected rank " + k;
+                }
+                for (int tries = 0; tries < 20; tries++) {
+                    int lo = rnd.nextInt(4 * n + 3) - 2 * n - 1;
+                    int hi = lo + rnd.nextInt(n + 2) - 1;
+                    List<String> expected = new ArrayList<>();
+                    List<String> actual = new ArrayList<>();
+                    tree.forEachInRange(lo, hi, (key, value) -> expected.add(key + "=" + value));
+                    index.forEachInRange(lo, hi, (key, value) -> actual.add(key + "=" + value));
+                    assert (expected.equals(actual)) : "unexpected range [" + lo + ", " + hi + "]";
+                }
+            }
+            try (java.util.stream.Stream<Path> files = Files.list(file.toAbsolutePath().getParent())) {
+                assert files.noneMatch(f -> f.getFileName().toString().startsWith(file.getFileName() + ".")) : "temporary file left";
+            }
+            //not an index, and headers with a negative or overflowing heap length, or too many items
+            long n = 1 << 28;
+            long[][] headers = {{0, 0, 0}, {0, 32, -1}, {0, 32, Long.MAX_VALUE}, {n, 32 + 12 * n, 0}};
+            for (long[] header : headers) {
+                ByteBuffer bytes = ByteBuffer.allocate(40);
+                bytes.putInt(header[0] == 0 && header[1] == 0 ? 0 : 0x41564C49).putInt((int) header[0]).putLong(header[1]).putLong(header[2]);
+                Files.write(file, bytes.array());
+                try {
+                    AVLIndex.open(file);
+                    assert false : "opened a corrupt index " + Arrays.toString(header);
+                } catch (IOException e) {
+                    //expected
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+        System.out.println("testAVLIndex Passed!");
+    }
+
+    void testDurableAVLTree() throws IOException {
+        Random rnd = new Random(23);
+        Path directory = Files.createTempDirectory("avl");
+        try {
+            TreeMap<Integer, String> expected = new TreeMap<>();
+            DurableAVLTree tree = DurableAVLTree.open(directory, 4, 50);
+            for (int op = 0; op < 400; op++) {
+                int k = rnd.nextInt(200);
+                if (op % 50 == 49 && tree.search(k) != null) { //split off the keys > k, and join them back
+                    AVLTree above = tree.split(k);
+                    expected.remove(k);
+                    expected.tailMap(k).clear();
+                    if (rnd.nextBoolean()) {
+                        int[] keys = above.keysToArray();
+                        String[] infos = above.infoToArray();
+                        tree.join(k, "joined" + op, above);
+                        for (int i = 0; i < keys.length; i++)
+                            expected.put(keys[i], infos[i]);
+                        expected.put(k, "joined" + op);
+                    }
+                }
+                else if (rnd.nextInt(3) == 0) {
+                    assert ((tree.delete(k) == -1) != expected.containsKey(k)) : "unexpected delete result";
+                    expected.remove(k);
+                }
+                else {
+                    String info = rnd.nextInt(10) == 0 ? null : "\u4e2d" + op;
+                    assert ((tree.insert(k, info) == -1) == expected.containsKey(k)) : "unexpected insert result";
+                    if (!expected.containsKey(k))
+                        expected.put(k, info);
+                }
+            }
+            tree.close();
+
+            tree = DurableAVLTree.open(directory, 4, 50); //snapshot and log
+            assert (Arrays.equals(tree.keysToArray(), expected.keySet().stream().mapToInt(Integer::intValue).toArray())) : "unexpected keys";
+            assert (Arrays.equals(tree.infoToArray(), expected.values().toArray(new String[0]))) : "unexpected info";
+
+            //a crash: writes of an unforced group are lost, and a torn record is truncated
+            tree.insert(-1, "durable");
+            tree.sync();
+            tree.insert(-2, "lost");
+            try (FileChannel wal = FileChannel.open(directory.resolve("wal"), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                wal.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 9, 1, 2, 3}));
+            }
+            tree = DurableAVLTree.open(directory, 4, 50);
+            assert ("durable".equals(tree.search(-1)) && tree.search(-2) == null) : "unexpected recovery";
+            assert (tree.size() == expected.size() + 1) : "unexpected size after recovery";
+
+            //a crash after a checkpoint's rename, before the log was truncated - the old log is not replayed
+            tree.delete(-1);
+            tree.sync();
+            byte[] oldLog = Files.readAllBytes(directory.resolve("wal"));
+            tree.checkpoint();
+            tree.close();
+            Files.write(directory.resolve("wal"), oldLog);
+            tree = DurableAVLTree.open(directory, 4, 50);
+            assert (tree.search(-1) == null && tree.size() == expected.size()) : "replayed an old log";
+
+            //a lost rename - the old snapshot next to the log of the new generation is refused, not silently reset
+            byte[] oldSnapshot = Files.readAllBytes(directory.resolve("snapshot"));
+            tree.insert(-3, "after checkpoint");
+            tree.checkpoint();
+            tree.close();
+            byte[] newLog = Files.readAllBytes(directory.resolve("wal"));
+            Files.write(directory.resolve("snapshot"), oldSnapshot);
+            try {
+                DurableAVLTree.open(directory, 4, 50);
+                assert false : "opened a log newer than its snapshot";
+            } catch (IOException e) {
+                //expected
+            }
+            assert (Arrays.equals(Files.readAllBytes(directory.resolve("wal")), newLog)) : "log changed by a failed open";
+
+            //a failed log write - the write is not applied to the tree, and every later write is rejected
+            Files.delete(directory.resolve("wal"));
+            Files.delete(directory.resolve("snapshot"));
+            tree = DurableAVLTree.open(directory, 1, 50);
+            tree.insert(1, "one");
+            tree.close(); //the log is closed under the tree - its next write fails
+            for (int k = 2; k < 4; k++) {
+                try {
+                    tree.insert(k, "lost");
+                    assert false : "inserted without logging";
+                } catch (IOException e) {
+                    //expected
+                }
+                assert (tree.search(k) == null && tree.size() == 1) : "applied a write which was not logged";
+            }
+            try {
+                tree.delete(1);
+                assert false : "deleted after a failed log write";
+            } catch (IOException e) {
+                //expected
+            }
+            assert ("one".equals(tree.search(1))) : "applied a rejected delete";
+            tree = DurableAVLTree.open(directory, 1, 50);
+            assert ("one".equals(tree.search(1)) && tree.size() == 1) : "unexpected recovery after a failed write";
+            tree.close();
+
+            //a group which is never full is still forced, by the first write after the delay
+            tree = DurableAVLTree.open(directory, 1000, 50, 0);
+            tree.insert(2, "forced by the delay");
+            tree = DurableAVLTree.open(directory, 1000, 50, 0); //a crash - the first instance is never synced
+            assert ("forced by the delay".equals(tree.search(2))) : "write of a delayed group was not forced";
+            tree.close();
+
+            //a join record larger than the log buffer
+            AVLTree joined = new AVLTree();
+            for (int k = 10; k < 20010; k++)
+                joined.insert(k, "joined" + k);
+            tree = DurableAVLTree.open(directory, 4, 50);
+            tree.join(5, "five", joined);
+            tree.close();
+            tree = DurableAVLTree.open(directory, 4, 50);
+            assert (tree.size() == 20003 && "five".equals(tree.search(5)) && "joined20009".equals(tree.search(20009))) : "unexpected large join";
+            tree.close();
+        } finally {
+            try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.collect(Collectors.toList()))
+                    Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+        System.out.println("testDurableAVLTree Passed!");
+    }
+
+    void testGenericAVLTrees() {
+        Random rnd = new Random(24);
+        for (int tries = 0; tries < 20; tries++) {
+            IntAVLTree<Integer> ints = new IntAVLTree<>();
+            LongAVLTree<Integer> longs = new LongAVLTree<>();
+            GenericAVLTree<String, Integer> strings = new GenericAVLTree<>(Comparator.reverseOrder());
+            TreeMap<Integer, Integer> expected = new TreeMap<>();
+            for (int op = 0; op < 500; op++) {
+                int k = rnd.nextInt(300) - 150;
+                long l = (long) k << 33; //beyond the ints
+                String s = String.format("%04d", k + 150);
+                if (rnd.nextInt(3) == 0) {
+                    boolean present = expected.remove(k) != null;
+                    assert ((ints.delete(k) == 0) == present && (longs.delete(l) == 0) == present
+                            && (strings.delete(s) == 0) == present) : "unexpected delete result";
+                }
+                else {
+                    boolean present = expected.putIfAbsent(k, op) != null;
+                    assert ((ints.insert(k, op) == -1) == present && (longs.insert(l, op) == -1) == present
+                            && (strings.insert(s, op) == -1) == present) : "unexpected insert result";
+                }
+            }
+            assert (ints.isValidAVL() && longs.isValidAVL() && strings.isValidAVL()) : "unbalanced tree";
+            int n = expected.size();
+            int[] keys = expected.keySet().stream().mapToInt(Integer::intValue).toArray();
+            List<Integer> values = new ArrayList<>(expected.values());
+            assert (ints.size() == n && longs.size() == n && strings.size() == n) : "unexpected size";
+            assert (Arrays.equals(ints.keysToArray(), keys)) : "unexpected int keys";
+            assert (Arrays.equals(longs.keysToArray(), Arrays.stream(keys).mapToLong(k -> (long) k << 33).toArray())) : "unexpected long keys";
+            assert (ints.values().equals(values) && longs.values().equals(values)) : "unexpected values";
+            Collections.reverse(values);
+            assert (strings.values().equals(values)) : "unexpected values in reverse order";
+            assert (Objects.equals(ints.min(), expected.isEmpty() ? null : expected.firstEntry().getValue())
+                    && Objects.equals(longs.max(), expected.isEmpty() ? null : expected.lastEntry().getValue())) : "unexpected min/max";
+            for (int i = 0; i < n; i++)
+                assert (ints.select(i) == keys[i] && longs.select(i) == (long) keys[i] << 33
+                        && strings.select(i).equals(String.format("%04d", keys[n - 1 - i] + 150))) : "unexpected select";
+            for (int k = -151; k <= 151; k++) {
+                assert (Objects.equals(ints.search(k), expected.get(k)) && ints.rank(k) == expected.headMap(k).size()) : "unexpected int search/rank";
+                assert (Objects.equals(longs.search((long) k << 33), expected.get(k)) && longs.rank((long) k << 33) == expected.headMap(k).size()) : "unexpected long search/rank";
+            }
+            int lo = rnd.nextInt(300) - 150;
+            int hi = lo + rnd.nextInt(100);
+            List<Integer> inRange = new ArrayList<>();
+            ints.forEachInRange(lo, hi, (key, value) -> inRange.add(key));
+            assert (inRange.equals(new ArrayList<>(expected.subMap(lo, true, hi, true).keySet()))) : "unexpected range";
+
+            if (n > 0) { //split at a key, and join back with it
+                int x = keys[rnd.nextInt(n)];
+                IntAVLTree<Integer>[] parts = ints.split(x);
+                assert (ints.empty() && parts[0].isValidAVL() && parts[1].isValidAVL()) : "unbalanced split";
+                assert (Arrays.equals(parts[0].keysToArray(), Arrays.copyOf(keys, expected.headMap(x).size()))) : "unexpected smaller part";
+                parts[0].join(x, -1, parts[1]);
+                assert (parts[0].isValidAVL() && parts[1].empty() && parts[0].search(x) == -1) : "unexpected join";
+                assert (Arrays.equals(parts[0].keysToArray(), keys)) : "unexpected keys after join";
+
+                String y = String.format("%04d", x + 150);
+                GenericAVLTree<String, Integer>[] halves = strings.split(y);
+                halves[1].join(y, -1, halves[0]);
+                assert (halves[1].isValidAVL() && halves[1].size() == n && halves[1].search(y) == -1) : "unexpected generic split/join";
+            }
+        }
+        System.out.println("testGenericAVLTrees Passed!");
+    }
+
+    void testOffHeapAVLTree() {
+        Random rnd = new Random(25);
+        OffHeapAVLTree tree = new OffHeapAVLTree(64); //small chunks - values share, fill, and outgrow them
+        TreeMap<Integer, byte[]> expected = new TreeMap<>();
+        for (int op = 0; op < 4000; op++) {
+            int k = rnd.nextInt(500);
+            if (rnd.nextInt(op < 2000 ? 4 : 2) == 0) {
+                assert ((tree.delete(k) == -1) == (expected.remove(k) == null)) : "unexpected delete result";
+            }
+            else {
+                byte[] value = new byte[rnd.nextInt(10) == 0 ? 100 + rnd.nextInt(100) : rnd.nextInt(20)];
+                rnd.nextBytes(value);
+                assert ((tree.insert(k, value) == -1) == expected.containsKey(k)) : "unexpected insert result";
+                expected.putIfAbsent(k, value);
+            }
+        }
+        assert tree.isValidAVL() : "unbalanced tree";
+        assert (Arrays.equals(tree.keysToArray(), expected.keySet().stream().mapToInt(Integer::intValue).toArray())) : "unexpected keys";
+        long live = expected.values().stream().mapToLong(value -> value.length).sum();
+        assert (tree.offHeapBytes() <= 2 * live + 2 * 64) : "deleted values were not reclaimed";
+        for (int k = -1; k <= 500; k++) {
+            ByteBuffer view = tree.search(k);
+            assert (expected.containsKey(k) ? view != null && view.isReadOnly() && view.equals(ByteBuffer.wrap(expected.get(k))) : view == null) : "unexpected value of " + k;
+        }
+        int[] n = new int[1];
+        tree.forEachInRange(100, 200, (key, value) -> {
+            assert value.equals(ByteBuffer.wrap(expected.get(key))) : "unexpected value in range";
+            n[0]++;
+        });
+        assert (n[0] == expected.subMap(100, true, 200, true).size()) : "unexpected range size";
+
+        //a view outlives the deletion of its item, and the compaction of the arena
+        int first = expected.firstKey();
+        ByteBuffer view = tree.min();
+        tree.delete(first);
+        tree.compact();
+        assert (view.equals(ByteBuffer.wrap(expected.remove(first)))) : "view changed after delete and compact";
+        assert (tree.offHeapBytes() == live - view.remaining()) : "unexpected size after compact";
+        System.out.println("testOffHeapAVLTree Passed!");
+    }
+
+    /**
+     * Runs the same operations on an ArrayAVLTree and an AVLTree, which must agree on every result
+     */
+    void testArrayAVLTree() {
+        Random rnd = new Random(2);
+        for (int tries = 0; tries < 30; tries++) {
+            ArrayAVLTree array = new ArrayAVLTree();
+            AVLTree tree = new AVLTree();
+            for (int op = 0; op < 600; op++) {
+                int k = rnd.nextInt(400);
+                if (rnd.nextInt(3) == 0)
+                    assert (array.delete(k) == tree.delete(k)) : "unexpected delete result";
+                else
+                    assert (array.insert(k, "v" + k) == tree.insert(k, "v" + k)) : "unexpected insert result";
+            }
+            assertSameTree(array, tree);
+
+            //deleted slots are reused before the pool grows
+            int slots = array.allocatedSlots();
+            int[] keys = array.keysToArray();
+            for (int i = 0; i < keys.length; i += 2)
+                assert (array.delete(keys[i]) == tree.delete(keys[i])) : "unexpected delete result";
+            for (int i = 0; i < keys.length; i += 2)
+                assert (array.insert(keys[i] + 1000, "w") == tree.insert(keys[i] + 1000, "w")) : "unexpected insert result";
+            assert (array.allocatedSlots() == slots) : "free slots were not reused";
+            assertSameTree(array, tree);
+
+            if (array.empty())
+                continue;
+            keys = array.keysToArray();
+            int x = keys[rnd.nextInt(keys.length)];
+            String info = array.search(x);
+            ArrayAVLTree[] arrayParts = array.split(x);
+            AVLTree[] treeParts = tree.split(x);
+            assertSameTree(arrayParts[0], treeParts[0]);
+            assertSameTree(arrayParts[1], treeParts[1]);
+
+            //join the parts back, then a tree of another pool - built by the same inserts on both sides
+            assert (arrayParts[0].join(x, info, arrayParts[1]) == treeParts[0].join(new AVLNode(x, info), treeParts[1])) : "unexpected join result";
+            assertSameTree(arrayParts[0], treeParts[0]);
+            ArrayAVLTree otherArray = new ArrayAVLTree();
+            AVLTree otherTree = new AVLTree();
+            for (int i = 0, n = rnd.nextInt(200); i < n; i++) {
+                int k = 3000 + rnd.nextInt(1000);
+                assert (otherArray.insert(k, "o" + k) == otherTree.insert(k, "o" + k)) : "unexpected insert result";
+            }
+            assert (arrayParts[0].join(2500, "middle", otherArray) == treeParts[0].join(new AVLNode(2500, "middle"), otherTree)) : "unexpected cross-pool join result";
+            assertSameTree(arrayParts[0], treeParts[0]);
+            for (int k = 0; k < 4000; k += 7)
+                assert (arrayParts[0].delete(k) == treeParts[0].delete(k)) : "unexpected delete after join";
+            assertSameTree(arrayParts[0], treeParts[0]);
+        }
+        System.out.println("testArrayAVLTree Passed!");
+    }
+
+    private static void assertSameTree(ArrayAVLTree array, AVLTree tree) {
+        assert (array.size() == tree.size() && array.empty() == tree.empty()) : "unexpected size";
+        assert (Arrays.equals(array.keysToArray(), tree.keysToArray())) : "unexpected keys";
+        assert (Arrays.equals(array.infoToArray(), tree.infoToArray())) : "unexpected info";
+        assert (Objects.equals(array.min(), tree.min()) && Objects.equals(array.max(), tree.max())) : "unexpected min/max";
+    }
+
     void testGetRoot() {
         AVLTree tree = new TestTree();
         assert (null == tree.getRoot()) : "root isn't null on empty tree";
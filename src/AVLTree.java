@@ -1,13 +1,26 @@
-import java.util.Stack;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * AVLTree
  * An implementation of a AVL Tree with
  * distinct integer keys and info
+ * Any int is a valid key - virtual nodes are told apart by identity, not by key.
  */
 
 public class AVLTree {
 
+    /**
+     * The single external leaf shared by every tree - all virtual children point here
+     * instead of allocating a new virtual node per real node.
+     * It is immutable - setters called on it are ignored (see AVLNode).
+     */
+    private static final AVLNode VIRTUAL_NODE = new AVLNode();
+
     private IAVLNode root; //References AVLTree root
     private IAVLNode max;
     private IAVLNode min;
@@ -17,7 +30,7 @@ public class AVLTree {
     Complexity: O(1)
      */
     public AVLTree(){
-        this.root = new AVLNode();
+        this.root = VIRTUAL_NODE;
         this.min = this.root;
         this.max = this.root;
     }
@@ -25,10 +38,127 @@ public class AVLTree {
 
     /**
     Used in making new trees in Split()
+    min and max are only placeholders here - split() sets them once it is done joining
     Complexity: O(1)
      */
     private AVLTree(IAVLNode root){
         this.root = root;
+        this.min = this.root;
+        this.max = this.root;
+    }
+
+    /**
+     * public static AVLTree buildFromSorted(int[] keys, String[] values)
+     * Returns a tree holding keys[i] with values[i], for every i.
+     * The tree is perfectly balanced - each node is the middle of its range of the arrays.
+     * @pre keys is sorted in strictly increasing order, values.length == keys.length
+     * Complexity: O(n) - every node is created and linked once, no searches or rebalancing
+     */
+    public static AVLTree buildFromSorted(int[] keys, String[] values) {
+        AVLTree tree = new AVLTree(buildBalanced(keys, values, 0, keys.length - 1));
+        tree.root.setParent(null);
+        tree.setMin();
+        tree.setMax();
+        return tree;
+    }
+
+    /**
+     * @return the root of a perfectly balanced subtree of keys[from..to] (a virtual node if from > to).
+     * Both halves differ in size by at most 1, so their heights differ by at most 1 as well.
+     * Complexity: O(to - from) - recursion depth is O(log n)
+     */
+    private static IAVLNode buildBalanced(int[] keys, String[] values, int from, int to) {
+        if (from > to)
+            return VIRTUAL_NODE;
+        int mid = (from + to) >>> 1;
+        AVLNode node = new AVLNode(keys[mid], values[mid]);
+        IAVLNode left = buildBalanced(keys, values, from, mid - 1);
+        IAVLNode right = buildBalanced(keys, values, mid + 1, to);
+        return link(node, left, right);
+    }
+
+    /**
+     * Makes left and right the children of node, and sets node's height and size from them
+     * @return node
+     */
+    private static IAVLNode link(AVLNode node, IAVLNode left, IAVLNode right) {
+        node.setLeft(left);
+        node.setRight(right);
+        left.setParent(node);   //no-op on a virtual node
+        right.setParent(node);
+        node.setHeight(Math.max(left.getHeight(), right.getHeight()) + 1);
+        node.setSize();
+        return node;
+    }
+
+    /**
+     * public void writeTo(WritableByteChannel out)
+     * Writes a binary snapshot of the tree to out, in the format of AVLSnapshot - blocks of a
+     * delta/varint key column and a length-prefixed UTF-8 value column, in key order.
+     * The items are streamed by two cursors (one per column of a block) through one direct buffer,
+     * with no arrays of keys or values made. out is not closed.
+     * Complexity: O(n)
+     */
+    public void writeTo(WritableByteChannel out) throws IOException {
+        AVLSnapshot.Writer writer = new AVLSnapshot.Writer(out);
+        writer.header(size());
+        Cursor keys = cursor();
+        Cursor values = cursor();
+        for (int left = size(); left > 0; left -= AVLSnapshot.BLOCK) {
+            int count = Math.min(left, AVLSnapshot.BLOCK);
+            writer.startBlock(count);
+            for (int i = 0; i < count; i++, keys.next())
+                writer.key(keys.getKey());
+            for (int i = 0; i < count; i++, values.next())
+                writer.value(values.getValue());
+        }
+        writer.flush();
+    }
+
+    /**
+     * public static AVLTree readFrom(ReadableByteChannel in)
+     * Returns the tree of a snapshot written by writeTo(), read from in (which is not closed).
+     * The tree is built while reading - nodes are created in key order, each subtree of the
+     * perfectly balanced shape of buildFromSorted() filled left to right, so only one block of the
+     * snapshot is held at a time.
+     * Throws IOException if in does not hold a whole snapshot as writeTo() writes it - cut short, or with a size,
+     * key or value length writeTo() cannot write (a negative size, keys not strictly increasing ints, a length
+     * which is not an int).
+     * Complexity: O(n)
+     */
+    public static AVLTree readFrom(ReadableByteChannel in) throws IOException {
+        AVLSnapshot.Reader reader = new AVLSnapshot.Reader(in);
+        AVLTree tree = new AVLTree(buildBalanced(reader, reader.header()));
+        tree.root.setParent(null);
+        tree.setMin();
+        tree.setMax();
+        return tree;
+    }
+
+    /**
+     * @return the root of a perfectly balanced subtree of the next n items of reader - the same shape
+     * as buildBalanced() gives n sorted items, built in order: left subtree, node, right subtree.
+     * Complexity: O(n) - recursion depth is O(log n)
+     */
+    private static IAVLNode buildBalanced(AVLSnapshot.Reader reader, int n) throws IOException {
+        if (n == 0)
+            return VIRTUAL_NODE;
+        int leftSize = (n - 1) / 2; //as mid = (from + to) >>> 1
+        IAVLNode left = buildBalanced(reader, leftSize);
+        reader.next();
+        AVLNode node = new AVLNode(reader.key(), reader.value());
+        IAVLNode right = buildBalanced(reader, n - 1 - leftSize);
+        return link(node, left, right);
+    }
+
+    /**
+    Takes the nodes, min and max of t - used when an operation builds its result in other trees
+    Complexity: O(1)
+     */
+    private void replaceWith(AVLTree t) {
+        this.root = t.root;
+        this.min = t.min;
+        this.max = t.max;
     }
 
     /**
@@ -87,10 +217,20 @@ public class AVLTree {
         if (parent == null){  //k is in tree
             return -1;
         }
+        return insertUnder(parent, new AVLNode(k, i));
+    }
+
+    /**
+     * Links node as a child of parent and rebalances, the rest of insert().
+     * @pre parent is the node findParent() returned for node's key
+     * @return the number of rebalancing operations, as insert()
+     * Complexity: O(log n)
+     */
+    private int insertUnder(IAVLNode parent, IAVLNode node) {
+        int k = node.getKey();
         int balanceProcesses = 0;
 
-        //creating new node and setting its relations with the parent - O(1) operations
-        IAVLNode node = new AVLNode(k, i);
+        //setting the new node's relations with the parent - O(1) operations
         node.setParent(parent);
         if (k < parent.getKey()){
             parent.setLeft(node);
@@ -99,80 +239,201 @@ public class AVLTree {
             parent.setRight(node);
         }
 
-        //balancing the tree - takes O(log n) operations - explanation in BalanceTreeAfterInsert()
+        //balancing the tree and fixing sizes - takes O(log n) operations - explanation in BalanceTreeAfterInsert()
         //note: balancing is needed only if parent was a leaf, if parent was unary and became binary - all good.
         if (parent.getHeight() == 0){
-            balanceProcesses = balanceTreeAfterInsert(node, balanceProcesses);
+            balanceProcesses = balanceTreeAfterInsert(node);
+        }
+        else{
+            updateSizeUntilTheRoot(parent);
         }
 
-        //fixing root, size, min, max after insertion - each takes O(log n) operations - detailed explanation in each.
+        //fixing root after insertion - O(1), explanation in setRoot()
         setRoot();
-        updateSizeUntilTheRoot(node);
-        setMin();
-        setMax();
+
+        //fixing min, max - O(1), the new node can only replace them
+        if (k < this.min.getKey()){
+            this.min = node;
+        }
+        if (k > this.max.getKey()){
+            this.max = node;
+        }
 
         return balanceProcesses;
     }
 
     /**
      *
-     * @param node - node that is currently looked upon in the balancing process
-     * @param balanceProcesses - counter used in recursive calls to count amount of balance operations used in the process
-     *                         initialized to 0 in first call.
+     * @param node - the inserted node, the balancing process goes up from it
      * @return returns the amount of balance operations used in the insertion process.
+     * Iterative - each promotion moves the problem one level up, a rotation ends the process.
+     * Sizes are fixed on the way up, and once balancing stops the remaining path is fixed
+     * by updateSizeUntilTheRoot() - so every node on the path is visited once.
      * Complexity: O(log n) -
      */
-    private int balanceTreeAfterInsert(IAVLNode node, int balanceProcesses){
-        // in the case we reach root
-        if (node.getParent() == null){
-            return 0;
-        }
-        // 3 cases as per class slide
-        if (((AVLNode) node.getParent()).getRankDifL() == 0){
-            if(((AVLNode) node.getParent()).getRankDifR() == 1){ //node parent is a 1,1 node - case 1 (Promote)
-                ((AVLNode) node.getParent()).promote();
-                return balanceTreeAfterInsert(node.getParent(), balanceProcesses+1);
+    private int balanceTreeAfterInsert(IAVLNode node){
+        int balanceProcesses = 0;
+        while (true){
+            ((AVLNode) node).setSize(); //node's subtree is final by now
+            AVLNode parent = (AVLNode) node.getParent();
+            // in the case we reach root
+            if (parent == null){
+                return 0;
             }
-            else{ //node parent is a 1,2 node
+            // 3 cases as per class slide
+            if (parent.getRankDifL() == 0){
+                if(parent.getRankDifR() == 1){ //node parent is a 1,1 node - case 1 (Promote)
+                    parent.promote();
+                    balanceProcesses++;
+                    node = parent; //problem moved upper
+                    continue;
+                }
                 if(((AVLNode) node).getRankDifR() == 2){ //node is a 1,2 node  - case 2 (Rotate)
-                    ((AVLNode) node.getParent()).demote();
-                    rotateRight(node.getParent());
+                    parent.demote();
+                    rotateRight(parent);
+                    updateSizeUntilTheRoot(node.getParent()); //node is the subtree root now
                     return balanceProcesses + 2;
                 }
-                else{ //node is a 2,1 node - case 3 (Double Rotate)
-                    ((AVLNode) node.getParent()).demote();
-                    ((AVLNode) node).demote();
-                    ((AVLNode) node.getRight()).promote();
-                    doubleRotateRight(node.getParent());
-                    return balanceProcesses + 5;
-                }
-            }
-        }
-        //mirrored 3 cases
-        else if (((AVLNode) node.getParent()).getRankDifR() == 0){
-            if(((AVLNode) node.getParent()).getRankDifL() == 1){ //node parent is a 1,1 node - case 1 (Promote)
-                ((AVLNode) node.getParent()).promote();
-                return balanceTreeAfterInsert(node.getParent(), balanceProcesses+1);
+                //node is a 2,1 node - case 3 (Double Rotate)
+                parent.demote();
+                ((AVLNode) node).demote();
+                ((AVLNode) node.getRight()).promote();
+                doubleRotateRight(parent);
+                updateSizeUntilTheRoot(node.getParent().getParent()); //node's parent is the subtree root now
+                return balanceProcesses + 5;
             }
-            else{ //node parent is a 2,1 node
+            //mirrored 3 cases
+            if (parent.getRankDifR() == 0){
+                if(parent.getRankDifL() == 1){ //node parent is a 1,1 node - case 1 (Promote)
+                    parent.promote();
+                    balanceProcesses++;
+                    node = parent;
+                    continue;
+                }
                 if(((AVLNode) node).getRankDifL() == 2){ //node is a 2,1 node - case 2 (Rotate)
-                    ((AVLNode) node.getParent()).demote();
-                    rotateLeft(node.getParent());
+                    parent.demote();
+                    rotateLeft(parent);
+                    updateSizeUntilTheRoot(node.getParent());
                     return balanceProcesses + 2;
                 }
-                else{ //node is a 1,2 node - case 3 (Double Rotate)
-                    ((AVLNode) node.getParent()).demote();
-                    ((AVLNode) node).demote();
-                    ((AVLNode) node.getLeft()).promote();
-                    doubleRotateLeft(node.getParent());
-                    return balanceProcesses + 5;
-                }
+                //node is a 1,2 node - case 3 (Double Rotate)
+                parent.demote();
+                ((AVLNode) node).demote();
+                ((AVLNode) node.getLeft()).promote();
+                doubleRotateLeft(parent);
+                updateSizeUntilTheRoot(node.getParent().getParent());
+                return balanceProcesses + 5;
             }
+            updateSizeUntilTheRoot(parent); //no balancing needed above node
+            return balanceProcesses;
         }
-        return balanceProcesses;
     }
 
 
+    /**
+     * public int insertAll(int[] keys, String[] values)
+     * inserts an item with key keys[i] and info values[i] for every i, as insert() would one by one:
+     * keys which already exist in the tree are skipped, and so are repeated keys after their first occurrence.
+     * returns the number of items inserted - the distinct keys of the batch which were not in the tree before.
+     * Unlike insert(), rebalancing is not counted: larger batches are restructured by split()/join() and by
+     * building parts directly, which have no rebalancing count of their own.
+     * @pre values.length == keys.length
+     *
+     * Complexity: O(m log m) for sorting the batch, then:
+     * small batches (< BATCH_SPLIT_THRESHOLD keys) are inserted in key order, each descent starting from the previous
+     * inserted node (finger search) - O(log n + sum of log d_i) amortized over the run, for distances d_i (in keys)
+     * between consecutive keys. A single key may still climb to near the root (e.g. from the largest key of the root's
+     * left subtree to the next one, d = 1), so the bound is for the whole run, not per key.
+     * larger batches are divided on their middle key - the tree is split there, the halves are inserted into the
+     * parts recursively and the parts are joined back, O(m log(n/m + 1)) in total. A part which is empty by then
+     * is built directly from the sorted keys, as buildFromSorted().
+     */
+    public int insertAll(int[] keys, String[] values) {
+        //sort the batch by (key, index), so that the first occurrence of a repeated key comes first
+        long[] order = new long[keys.length];
+        for (int i = 0; i < keys.length; i++)
+            order[i] = ((long) keys[i] << 32) | i;
+        Arrays.sort(order);
+        //drop repeated keys - O(m)
+        int m = 0;
+        for (int i = 0; i < order.length; i++)
+            if (m == 0 || (int) (order[i] >> 32) != (int) (order[m - 1] >> 32))
+                order[m++] = order[i];
+        return insertSorted(order, 0, m - 1, values);
+    }
+
+    /**
+     * batches with fewer keys than this are inserted one by one by insertAll(), larger ones are divided by split/join
+     */
+    private static final int BATCH_SPLIT_THRESHOLD = 64;
+
+    /**
+     * Inserts order[from..to] (sorted, distinct keys, see insertAll()) into the tree.
+     * @return the number of items inserted
+     */
+    private int insertSorted(long[] order, int from, int to, String[] values) {
+        if (from > to)
+            return 0;
+        if (this.empty() && to - from >= 1) { //nothing to merge with - build directly in O(to - from)
+            int[] keys = new int[to - from + 1];
+            String[] infos = new String[keys.length];
+            for (int i = from; i <= to; i++) {
+                keys[i - from] = (int) (order[i] >> 32);
+                infos[i - from] = values[(int) order[i]];
+            }
+            replaceWith(buildFromSorted(keys, infos));
+            return keys.length;
+        }
+        if (to - from + 1 < BATCH_SPLIT_THRESHOLD)
+            return insertSortedByFinger(order, from, to, values);
+
+        //divide on the middle key: make sure it is in the tree, split there, recurse and join back
+        int mid = (from + to) >>> 1;
+        int k = (int) (order[mid] >> 32);
+        int inserted = insert(k, values[(int) order[mid]]) == -1 ? 0 : 1; //-1 - k was already in the tree
+        String info = search(k);
+        AVLTree[] parts = split(k);
+        inserted += parts[0].insertSorted(order, from, mid - 1, values);
+        inserted += parts[1].insertSorted(order, mid + 1, to, values);
+        parts[0].join(new AVLNode(k, info), parts[1]);
+        replaceWith(parts[0]);
+        return inserted;
+    }
+
+    /**
+     * Inserts order[from..to] (sorted, distinct keys) one by one, starting each search from the previous inserted node:
+     * going up while the parent's key is not larger than k, the subtree we stop at is the first one whose key range
+     * contains k (its parent, if any, is larger than k and the finger is inside it), then going down as findParent().
+     * @return the number of items inserted
+     * Complexity: O(log n + sum of log d_i) amortized over the run, for distances d_i (in keys) between consecutive keys,
+     * plus rebalancing - not O(log d) per key: the climb stops only at an ancestor larger than k, which may be near
+     * the root even for d = 1
+     */
+    private int insertSortedByFinger(long[] order, int from, int to, String[] values) {
+        int inserted = 0;
+        IAVLNode finger = this.root;
+        for (int i = from; i <= to; i++) {
+            int k = (int) (order[i] >> 32);
+            IAVLNode node = new AVLNode(k, values[(int) order[i]]);
+            if (this.empty()) {
+                initializeTree(node);
+                finger = node;
+                inserted++;
+                continue;
+            }
+            IAVLNode top = finger;
+            while (top.getParent() != null && top.getParent().getKey() <= k)
+                top = top.getParent();
+            IAVLNode parent = findParent(top.getParent(), top, k);
+            if (parent == null) //k is in tree
+                continue;
+            insertUnder(parent, node);
+            finger = node;
+            inserted++;
+        }
+        return inserted;
+    }
+
     /**
      * public int delete(int k)
      * deletes an item with key k from the binary tree, if it is there;
@@ -181,7 +442,7 @@ public class AVLTree {
      * demotion/rotation - counted as one rebalance operation, double-rotation is counted as 2.
      * returns -1 if an item with key k was not found in the tree.
      *
-     * The recursive method that re balance the tree is 'BalanceTreeAfterDelete' - the other methods called are in Time complexity of O(1).
+     * The method that re balance the tree is 'BalanceTreeAfterDelete' - the other methods called are in Time complexity of O(1).
      * Time complexity - O(log n)
      */
     public int delete(int k) {
@@ -189,11 +450,19 @@ public class AVLTree {
         IAVLNode x = find(k); 	//the node to be deleted
         if (x == null)			//No node with key k
             return -1;
+        //min/max have no left/right son respectively, so they are never binary and x itself is removed -
+        //their replacement is one successor/predecessor step away (virtual node if the tree becomes empty)
+        if (x == this.min)
+            this.min = successor(x);
+        if (x == this.max)
+            this.max = predecessor(x);
         int num = ((AVLNode) x).nodeType(); // Type of a node
         IAVLNode success;
         if (num == 2) { //binary
             success = successor(x);
             exchange(x, success);  //replace x with success. success is still there
+            if (success == this.max) //x now holds the max key
+                this.max = x;
             num = ((AVLNode) success).nodeType(); //num is now -1/0/1
             deleteNode(success, num, arr);  // Delete the successor
         }
@@ -201,12 +470,83 @@ public class AVLTree {
             deleteNode(x, num, arr);  
         }
         setRoot();
-        setMax();
-        setMin();
 
         return arr[0];
     }
     
+    /**
+     * public int deleteRange(int lo, int hi)
+     * deletes every item with lo <= key <= hi from the tree.
+     * returns the number of deleted items.
+     *
+     * The tree is split before the first key in range and after the last one, and the two outer parts are joined back
+     * by joinTrees().
+     * Time complexity - O(log n) - two splits, one delete and one join, regardless of the number of deleted items
+     */
+    public int deleteRange(int lo, int hi) {
+        IAVLNode first = ceiling(lo);
+        IAVLNode last = floor(hi);
+        if (!first.isRealNode() || !last.isRealNode() || first.getKey() > last.getKey()) //no key in range
+            return 0;
+        int removed = countInRange(lo, hi);
+        int lastKey = last.getKey();
+
+        AVLTree[] lower = split(first.getKey()); //lower[0] - keys < lo
+        AVLTree upper = lower[1];
+        if (lastKey != first.getKey())
+            upper = upper.split(lastKey)[1]; //keys > hi
+
+        replaceWith(joinTrees(lower[0], upper));
+        return removed;
+    }
+
+    /**
+     * public int deleteAll(int[] keys)
+     * deletes the items with the given keys from the tree, keys which are not in the tree (or repeat) are skipped.
+     * returns the number of deleted items.
+     *
+     * The keys are sorted and matched against the tree with a cursor, a run of keys which are consecutive in the tree
+     * is deleted with deleteRange(), single keys with delete().
+     * Time complexity - O(m log m) for sorting, then O(log n) per run (plus O(1) amortized per key matched)
+     */
+    public int deleteAll(int[] keys) {
+        int[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        int removed = 0;
+        int i = 0;
+        while (i < sorted.length) {
+            Cursor cursor = cursor(sorted[i], sorted[sorted.length - 1]);
+            if (!cursor.isValid()) //no more batch keys in the tree
+                break;
+            //skip batch keys smaller than the next key in the tree
+            while (sorted[i] < cursor.getKey())
+                i++;
+            if (sorted[i] > cursor.getKey())
+                continue;
+            //sorted[i] is in the tree, extend the run while the next batch key is the next tree key
+            int first = sorted[i];
+            int count = 1;
+            while (i + 1 < sorted.length) {
+                if (sorted[i + 1] == sorted[i]) { //repeated key
+                    i++;
+                }
+                else if (cursor.next() && cursor.getKey() == sorted[i + 1]) {
+                    i++;
+                    count++;
+                }
+                else
+                    break;
+            }
+            if (count == 1)
+                delete(first);
+            else
+                deleteRange(first, sorted[i]);
+            removed += count;
+            i++;
+        }
+        return removed;
+    }
+
     /**
      * The method gets: node to be deleted, type 'k' (UnaryR.L/Leaf), array with number of re balance operations which is empty
      * Time complexity - O(log n)
@@ -227,12 +567,12 @@ public class AVLTree {
         IAVLNode x = node.getParent();
 
         if (x == null)  				//node is root
-            this.root = new AVLNode();
+            this.root = VIRTUAL_NODE;
         else {
             if (x.getLeft() == node) 	  //node is a left son
-                x.setLeft(new AVLNode()); //replace it with leaf
+                x.setLeft(VIRTUAL_NODE); //replace it with leaf
             else						  //node is a right son
-                x.setRight(new AVLNode()); 
+                x.setRight(VIRTUAL_NODE); 
       
 		    balanceTreeAfterDelete(x, arr);		//fix the tree after the act of Deletion
 		   
@@ -245,7 +585,7 @@ public class AVLTree {
      */
     private void deleteUnary(IAVLNode node, int[] arr) {
     	IAVLNode y; // node's son
-    	if (node.getRight().getParent() == node)   //node has right son
+    	if (node.getRight().isRealNode())   //node has right son
     		y = node.getRight();
         else 									   //node has left son
         	y = node.getLeft();	
@@ -265,97 +605,96 @@ public class AVLTree {
     
 
     /**
-     * update all the sizes until the root
-     * The method used after re balancing completed
+     * update all the sizes from node until the root (node may be null)
+     * The method used after re balancing completed - iterative, to avoid deep recursion
+     * Every size on the path changes, so the walk always reaches the root.
      * W.C. Time Complexity - O(log n)
      */
     private void updateSizeUntilTheRoot(IAVLNode node){
-    	if(node == null)
-    		return;
-    	((AVLNode) node).setSize();
-    	updateSizeUntilTheRoot(node.getParent()); // Recursive call
+    	while(node != null){
+    		((AVLNode) node).setSize();
+    		node = node.getParent();
+    	}
     }
 
 
     /**
-     * The method re balance the tree recursively after 'delete' operation
+     * The method re balance the tree after 'delete' operation, going up from 'x' in a loop
      * 'x' is the node to be checked in the process, 'arr' keeps the number of operation made
      * Time complexity - O(log n)
      */
     private void balanceTreeAfterDelete(IAVLNode x, int[] arr) {
-        if (x == null) // reached the root
-            return;
         int difL, difR;
         IAVLNode tmp;
-        
-        difL = ((AVLNode) x).getRankDifL();
-        difR = ((AVLNode) x).getRankDifR();
-        if ((difL == 1 && difR == 2) || (difL == 2 && difR == 1)) { //problem solved
-        	updateSizeUntilTheRoot(x);
-        	return;
-        }
-        if ((difL == 2) && (difR == 2)) {
-            ((AVLNode) x).demote();
-            arr[0]++;
-            ((AVLNode) x).setSize();
-            balanceTreeAfterDelete(x.getParent(), arr); //problem solved or moved upper
-        }
-        // difL & difR : equal to (3 & 1) | (1 & 3) 
-        // look on the son of the "deeper" which is the right one. later we will make the same logic for the left.
-        else {
-        
-        if ((difL == 3) && (difR == 1)) {
-            tmp = x.getRight();
-            difL = ((AVLNode) tmp).getRankDifL();
-            difR = ((AVLNode) tmp).getRankDifR();
-
-            if (((difL == 1) && (difR == 1)) || ((difL == 2) && (difR == 1))) { //rotate left once
-                rotateLeft(x); // tmp is the current root of the subTree
-                arr[0] += 3;   // 1 rotate, 2 rank updates
-                if ((difL == 1)) { //problem solved
-                	((AVLNode) x).demote();
-                    ((AVLNode) tmp).promote();
-                    updateSizeUntilTheRoot(x);
-                } else { 	// (difL == 2) && (difR == 1) problem solved or moved upper
-                	((AVLNode) x).doubleDemote();
-                    balanceTreeAfterDelete(tmp.getParent(), arr);  //tmp is the current root of the subTree.
+
+        while (x != null) { // null - reached the root
+            difL = ((AVLNode) x).getRankDifL();
+            difR = ((AVLNode) x).getRankDifR();
+            if ((difL == 1 && difR == 2) || (difL == 2 && difR == 1)) { //problem solved
+                updateSizeUntilTheRoot(x);
+                return;
+            }
+            if ((difL == 2) && (difR == 2)) {
+                ((AVLNode) x).demote();
+                arr[0]++;
+                ((AVLNode) x).setSize();
+                x = x.getParent(); //problem solved or moved upper
+            }
+            // difL & difR : equal to (3 & 1) | (1 & 3)
+            // look on the son of the "deeper" which is the right one. later we will make the same logic for the left.
+            else if ((difL == 3) && (difR == 1)) {
+                tmp = x.getRight();
+                difL = ((AVLNode) tmp).getRankDifL();
+                difR = ((AVLNode) tmp).getRankDifR();
+
+                if (((difL == 1) && (difR == 1)) || ((difL == 2) && (difR == 1))) { //rotate left once
+                    rotateLeft(x); // tmp is the current root of the subTree
+                    arr[0] += 3;   // 1 rotate, 2 rank updates
+                    if ((difL == 1)) { //problem solved
+                        ((AVLNode) x).demote();
+                        ((AVLNode) tmp).promote();
+                        updateSizeUntilTheRoot(x);
+                        return;
+                    }
+                    // (difL == 2) && (difR == 1) problem solved or moved upper
+                    ((AVLNode) x).doubleDemote();
+                    x = tmp.getParent();  //tmp is the current root of the subTree.
+                } else { //((difL == 1) && (difR == 2))  //double rotate left, problem solved or moved upper
+                    doubleRotateLeft(x);
+                    ((AVLNode) x).doubleDemote();
+                    ((AVLNode) tmp).demote();
+                    ((AVLNode) tmp.getParent()).promote();
+                    arr[0] += 6;
+                    x = tmp.getParent().getParent();
                 }
-            } else { //((difL == 1) && (difR == 2))  //double rotate left, problem solved or moved upper
-                doubleRotateLeft(x);
-                ((AVLNode) x).doubleDemote(); 
-                ((AVLNode) tmp).demote();
-                ((AVLNode) tmp.getParent()).promote(); 
-                arr[0] += 6;
-                balanceTreeAfterDelete(tmp.getParent().getParent(), arr);
             }
-        }
-        else {//difR == 3 && difL == 1
-            tmp = x.getLeft();
-            difL = ((AVLNode) tmp).getRankDifL();
-            difR = ((AVLNode) tmp).getRankDifR();
-         
-            if (((difL == 1) && (difR == 1)) || ((difL == 1) && (difR == 2))) { //rotate right once
-                rotateRight(x);
-                arr[0] += 3;
-                if ((difR == 1)) { //problem solved
-                	((AVLNode) x).demote(); 
-                	((AVLNode) tmp).promote();
-                    updateSizeUntilTheRoot(x);
-                } else {
-                	((AVLNode) x).doubleDemote();
-                    balanceTreeAfterDelete(tmp.getParent(), arr);  //tmp is now the root of the mini subTree.
+            else {//difR == 3 && difL == 1
+                tmp = x.getLeft();
+                difL = ((AVLNode) tmp).getRankDifL();
+                difR = ((AVLNode) tmp).getRankDifR();
+
+                if (((difL == 1) && (difR == 1)) || ((difL == 1) && (difR == 2))) { //rotate right once
+                    rotateRight(x);
+                    arr[0] += 3;
+                    if ((difR == 1)) { //problem solved
+                        ((AVLNode) x).demote();
+                        ((AVLNode) tmp).promote();
+                        updateSizeUntilTheRoot(x);
+                        return;
+                    }
+                    ((AVLNode) x).doubleDemote();
+                    x = tmp.getParent();  //tmp is now the root of the mini subTree.
+                } else { // (difL == 2) && (difR == 1)
+                    doubleRotateRight(x);
+                    arr[0] += 2;
+                    ((AVLNode) x).doubleDemote();
+                    ((AVLNode) tmp).demote();
+                    ((AVLNode) tmp.getParent()).promote();
+                    arr[0] += 6;
+                    x = tmp.getParent().getParent();
                 }
-            } else { // (difL == 2) && (difR == 1)
-                doubleRotateRight(x);
-                arr[0] += 2;
-                ((AVLNode) x).doubleDemote();
-                ((AVLNode) tmp).demote();
-                ((AVLNode) tmp.getParent()).promote();
-                arr[0] += 6;
-                balanceTreeAfterDelete(tmp.getParent().getParent(), arr);
             }
         }
-      }
     }
     
    /**
@@ -439,20 +778,22 @@ public class AVLTree {
     }
 
     /**
-     * @param node - node used in recursive calls as per binary-tree searches
+     * @param node - node from which the binary-tree search starts
      * @param k - the key according to which the search is conducted
      * @return the node in which k is it's key, if not found - returns null
      * Complexity: O(log n) - same as BST search, as taught in class
      */
     private IAVLNode find(IAVLNode node, int k) {
-
-        if (node.getKey() == -1) //we reached a virtual node, therefore k wasn't found
-            return null;
-        if (node.getKey() == k) //k was found - returns node
-            return node;
-        if (node.getKey() > k) // k is smaller than the current key - search in left-subtree
-            return find(node.getLeft(), k);
-        return find(node.getRight(), k); // k is larger than the current key - search in right-subtree
+        while (node.isRealNode()) { //reaching a virtual node means k wasn't found
+            int key = node.getKey();
+            if (key == k) //k was found - returns node
+                return node;
+            if (key > k) // k is smaller than the current key - search in left-subtree
+                node = node.getLeft();
+            else // k is larger than the current key - search in right-subtree
+                node = node.getRight();
+        }
+        return null;
     }
 
     /**
@@ -476,7 +817,7 @@ public class AVLTree {
      */
     private IAVLNode findParent(IAVLNode parent, IAVLNode node, int k){
         //implement search in AVL tree until we reach a virtual node
-        while(node.getKey() != -1){
+        while(node.isRealNode()){
             int key = node.getKey();
             if(key == k){ return null;} //k is in tree
             if(key > k) { //k should be in left subtree
@@ -499,7 +840,7 @@ public class AVLTree {
      */
     private IAVLNode successor(IAVLNode x) {
         //case 1 - x has a right subtree, therefore successor should be the minimum node there
-        if (x.getRight().getKey() != -1){
+        if (x.getRight().isRealNode()){
             return minByNode(x.getRight());
         }
         //case 2 - x doesn't have a right subtree - therefore the successor should be the first node where we "go right"
@@ -510,7 +851,71 @@ public class AVLTree {
             }
             x = x.getParent();
         }
-        return new AVLNode();
+        return VIRTUAL_NODE;
+    }
+
+    /**
+     *
+     * @param x - node which we need to find its predecessor
+     * @return predecessor of x, or a virtual node if x has no predecessor (x is a min-key node)
+     * Complexity: O(log n) - mirror of successor()
+     */
+    private IAVLNode predecessor(IAVLNode x) {
+        //case 1 - x has a left subtree, therefore predecessor should be the maximum node there
+        if (x.getLeft().isRealNode()){
+            IAVLNode tmpNode = x.getLeft();
+            while (tmpNode.getRight().isRealNode())
+                tmpNode = tmpNode.getRight();
+            return tmpNode;
+        }
+        //case 2 - the predecessor is the first node where we "go left" when we go up the tree from x
+        while(x.getParent() != null){
+            if(x.getParent().getRight() == x){
+                return x.getParent();
+            }
+            x = x.getParent();
+        }
+        return VIRTUAL_NODE;
+    }
+
+    /**
+     * @return the node with the smallest key >= k, or a virtual node if there is none
+     * Complexity: O(log n) - a single descent from the root
+     */
+    private IAVLNode ceiling(int k) {
+        IAVLNode found = VIRTUAL_NODE;
+        IAVLNode tmp = this.root;
+        while (tmp.isRealNode()) {
+            if (tmp.getKey() == k)
+                return tmp;
+            if (tmp.getKey() > k) { //tmp is a candidate, a smaller one may be on its left
+                found = tmp;
+                tmp = tmp.getLeft();
+            }
+            else
+                tmp = tmp.getRight();
+        }
+        return found;
+    }
+
+    /**
+     * @return the node with the largest key <= k, or a virtual node if there is none
+     * Complexity: O(log n) - mirror of ceiling()
+     */
+    private IAVLNode floor(int k) {
+        IAVLNode found = VIRTUAL_NODE;
+        IAVLNode tmp = this.root;
+        while (tmp.isRealNode()) {
+            if (tmp.getKey() == k)
+                return tmp;
+            if (tmp.getKey() < k) { //tmp is a candidate, a larger one may be on its right
+                found = tmp;
+                tmp = tmp.getRight();
+            }
+            else
+                tmp = tmp.getLeft();
+        }
+        return found;
     }
 
     /**
@@ -534,7 +939,7 @@ public class AVLTree {
     }
 
     /**
-     * Sets the minimum node of the tree - as part of insert/delete/split.
+     * Sets the minimum node of the tree - as part of split.
      * Complexity: O(log n) - since we need to traverse the tree to its leftmost node - due to minByNode().
      */
     private void setMin(){
@@ -550,7 +955,7 @@ public class AVLTree {
      */
     private IAVLNode minByNode(IAVLNode node){
         IAVLNode tmpNode = node;
-        while (tmpNode.getLeft().getKey() != -1) //go to leftmost non-virtual node from node
+        while (tmpNode.getLeft().isRealNode()) //go to leftmost non-virtual node from node
             tmpNode = tmpNode.getLeft();
         return tmpNode;
     }
@@ -567,7 +972,7 @@ public class AVLTree {
     }
 
     /**
-     * Sets the maximum node of the tree - as part of insert/delete/split.
+     * Sets the maximum node of the tree - as part of split.
      * Complexity: O(log n) - since we need to traverse the tree to its rightmost node
      */
     private void setMax(){
@@ -576,55 +981,24 @@ public class AVLTree {
         	this.max = this.root;
         }
         else {
-        	while (node.getRight().getKey() != -1) //go to rightmost non-virtual node from node
+        	while (node.getRight().isRealNode()) //go to rightmost non-virtual node from node
         		node = node.getRight();
         	this.max = node;
         }
     }
 
-    /**
-     * Used inorder to simplify keysToArray() and infoToArray()
-     * implementation similar to HW2 Q3b answer - using a stack to perform in-order, non-recursive write to array.
-     * @return an array of nodes in the tree, in-order according to keys
-     * Complexity: O(n) - as we traverse any given node a maximum of 3 times.
-     */
-    private IAVLNode[] nodesToArray(){
-        IAVLNode[] arr = new IAVLNode[size()]; //create array in the size of the tree
-        int pos = 0;
-        Stack<IAVLNode> arrStack = new Stack<>();
-        IAVLNode currentNode = this.root;
-        while (true){
-            if (currentNode.getKey() != -1){
-                arrStack.push(currentNode);
-                currentNode = currentNode.getLeft();
-            }
-            else if (!arrStack.empty()){
-                currentNode = arrStack.pop();
-                arr[pos] = currentNode;
-                pos++;
-                currentNode = currentNode.getRight();
-            }
-            else{
-                break;
-            }
-        }
-        return arr;
-    }
-
     /**
      * public int[] keysToArray()
      * Returns a sorted array which contains all keys in the tree,
      * or an empty array if the tree is empty.
-     * Complexity: O(n) - due to nodesToArray() and due to the loop going over it
+     * Complexity: O(n) - an in-order walk with a Cursor, O(1) amortized per node and no allocation besides the result.
      */
     public int[] keysToArray() {
-        if (empty()){
-            return new int[]{};
-        }
         int[] arr = new int[size()]; //create array in the size of the tree
-        IAVLNode[] nodeArr = nodesToArray();
+        Cursor cursor = cursor();
         for( int i = 0 ; i < arr.length ; i++){
-            arr[i] = nodeArr[i].getKey();
+            arr[i] = cursor.getKey();
+            cursor.next();
         }
         return arr;
     }
@@ -634,20 +1008,48 @@ public class AVLTree {
      * Returns an array which contains all info in the tree,
      * sorted by their respective keys,
      * or an empty array if the tree is empty.
-     * Complexity: O(n) - due to nodesToArray() and due to the loop going over it
+     * Complexity: O(n) - an in-order walk with a Cursor, O(1) amortized per node and no allocation besides the result.
      */
     public String[] infoToArray() {
-        if (empty()){
-            return new String[]{};
-        }
         String[] arr = new String[size()]; //create array in the size of the tree
-        IAVLNode[] nodeArr = nodesToArray();
+        Cursor cursor = cursor();
         for( int i = 0 ; i < arr.length ; i++){
-            arr[i] = nodeArr[i].getValue();
+            arr[i] = cursor.getValue();
+            cursor.next();
         }
         return arr;
     }
 
+    /**
+     * public Cursor cursor()
+     * Returns a cursor on the item with the smallest key (not valid if the tree is empty).
+     * Complexity: O(1) - since we keep record of the minimum node
+     */
+    public Cursor cursor() {
+        return new Cursor(this.min, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * public Cursor cursor(int lo, int hi)
+     * Returns a cursor bounded to the keys in [lo, hi], on the smallest of them
+     * (not valid if there is none).
+     * Complexity: O(log n) - a single descent to lo
+     */
+    public Cursor cursor(int lo, int hi) {
+        return new Cursor(ceiling(lo), lo, hi);
+    }
+
+    /**
+     * public void forEachInRange(int lo, int hi, RangeConsumer consumer)
+     * Passes every item with lo <= key <= hi to consumer, in key order.
+     * The tree must not be changed by consumer.
+     * Complexity: O(log n + k) - a descent to lo, then k successor steps
+     */
+    public void forEachInRange(int lo, int hi, RangeConsumer consumer) {
+        for (Cursor cursor = cursor(lo, hi); cursor.isValid(); cursor.next())
+            consumer.accept(cursor.getKey(), cursor.getValue());
+    }
+
     /**
      * public int size()
      * Returns the number of nodes in the tree.
@@ -657,6 +1059,69 @@ public class AVLTree {
         return ((AVLNode) this.root).getSize(); // size of tree = size of root
     }
 
+    /**
+     * public int select(int i)
+     * Returns the key of rank i - the i-th smallest key, counting from 0 (same as keysToArray()[i]).
+     * precondition: 0 <= i < size()
+     * Complexity: O(log n) - a single descent from the root, choosing a side by the left subtree's size.
+     */
+    public int select(int i) {
+        IAVLNode node = this.root;
+        while (true) {
+            int leftSize = ((AVLNode) node.getLeft()).getSize();
+            if (i == leftSize) //exactly i keys are smaller than node's key
+                return node.getKey();
+            if (i < leftSize) {
+                node = node.getLeft();
+            }
+            else { //skip the left subtree and node itself
+                i -= leftSize + 1;
+                node = node.getRight();
+            }
+        }
+    }
+
+    /**
+     * public int rank(int k)
+     * Returns the number of keys in the tree which are smaller than k (k doesn't have to be in the tree).
+     * If k is in the tree, select(rank(k)) == k.
+     * Complexity: O(log n) - due to countBelow()
+     */
+    public int rank(int k) {
+        return countBelow(k, false);
+    }
+
+    /**
+     * public int countInRange(int lo, int hi)
+     * Returns the number of keys k in the tree with lo <= k <= hi, or 0 if lo > hi.
+     * Complexity: O(log n) - two calls of countBelow()
+     */
+    public int countInRange(int lo, int hi) {
+        if (lo > hi)
+            return 0;
+        return countBelow(hi, true) - countBelow(lo, false);
+    }
+
+    /**
+     * @return the number of keys smaller than k, or smaller than or equal to k if inclusive
+     * Complexity: O(log n) - a single descent from the root, summing the sizes of the subtrees left of the path.
+     */
+    private int countBelow(int k, boolean inclusive) {
+        int count = 0;
+        IAVLNode node = this.root;
+        while (node.isRealNode()) {
+            int key = node.getKey();
+            if (key < k || (inclusive && key == k)) { //node and its left subtree are counted
+                count += ((AVLNode) node.getLeft()).getSize() + 1;
+                node = node.getRight();
+            }
+            else {
+                node = node.getLeft();
+            }
+        }
+        return count;
+    }
+
     /**
      * public int getRoot()
      * Returns the root AVL node, or a virtual node if the tree is empty
@@ -696,30 +1161,30 @@ public class AVLTree {
         //reset child-parent relations of x and it's subtrees
         node.getLeft().setParent(null);
         node.getRight().setParent(null);
-        node.setLeft(new AVLNode());
-        node.setRight(new AVLNode());
+        node.setLeft(VIRTUAL_NODE);
+        node.setRight(VIRTUAL_NODE);
 
         while (node.getParent() != null){
             //join current subtree with left split-tree
             if(node.getParent().getRight() == node){
                 node = node.getParent();
                 node.getRight().setParent(null);
-                node.setRight(new AVLNode());
+                node.setRight(VIRTUAL_NODE);
                 IAVLNode tmp = node.getLeft();
                 IAVLNode tmp_node = new AVLNode(node.getKey(), node.getValue());
                 node.getLeft().setParent(null);
-                node.setLeft(new AVLNode());
+                node.setLeft(VIRTUAL_NODE);
                 t1.join(tmp_node, new AVLTree(tmp));
             }
             //join current subtree with right split-tree
             else{
                 node = node.getParent();
                 node.getLeft().setParent(null);
-                node.setLeft(new AVLNode());
+                node.setLeft(VIRTUAL_NODE);
                 IAVLNode tmp = node.getRight();
                 IAVLNode tmp_node = new AVLNode(node.getKey(), node.getValue());
                 node.getRight().setParent(null);
-                node.setRight(new AVLNode());
+                node.setRight(VIRTUAL_NODE);
                 t2.join(tmp_node, new AVLTree(tmp));
             }
         }
@@ -732,6 +1197,32 @@ public class AVLTree {
         return new AVLTree[]{t1, t2};
     }
     
+    /**
+     * public View[] splitView(int x)
+     * Returns [v1, v2] - views of the items with keys < x and keys > x, leaving the tree as it is.
+     * x does not have to be in the tree.
+     * These are not new trees: nodes have parent pointers, so a subtree cannot be shared by two trees, and a split
+     * into new trees with O(log n) allocation is not possible here. The views are live and read-only - they show
+     * later changes of the tree, and cannot be split, joined or changed; View.copy() makes a separate tree in O(n).
+     * For stable halves which can be split, joined and changed further, keep the items in a PersistentAVLTree,
+     * whose split() leaves the tree as it is and allocates O(log n) nodes (path copying).
+     * Complexity: O(1) - two objects are allocated, whatever the size of the tree
+     */
+    public View[] splitView(int x) {
+        View lower = x == Integer.MIN_VALUE ? new View(0, -1) : new View(Integer.MIN_VALUE, x - 1);
+        View upper = x == Integer.MAX_VALUE ? new View(0, -1) : new View(x + 1, Integer.MAX_VALUE);
+        return new View[]{lower, upper};
+    }
+
+    /**
+     * public View view(int lo, int hi)
+     * Returns a view of the items with lo <= key <= hi (empty if lo > hi), see splitView()
+     * Complexity: O(1)
+     */
+    public View view(int lo, int hi) {
+        return new View(lo, hi);
+    }
+    
     /**
      * public join(IAVLNode x, AVLTree t)
      * joins t and x with the tree.
@@ -775,13 +1266,27 @@ public class AVLTree {
         //special case for join which is not included in insert
        
         specialCaseForJoin(x); //if we are in special case, handle it
-        balanceTreeAfterInsert(x, 0); //fix as it was an insert. problem might occur in x's parent, or not at all.
+        balanceTreeAfterInsert(x); //fix as it was an insert (sizes included). problem might occur in x's parent, or not at all.
         setRoot();
-        updateSizeUntilTheRoot(x);
         return complex;
     }
 
 
+    /**
+     * public void join(AVLTree t)
+     * joins t with the tree, without a middle item - see joinTrees().
+     * precondition: keys(t) < keys() or keys(t) > keys(). t/tree might be empty.
+     * postcondition: t is not usable afterwards
+     *
+     * Time complexity - O(log n) - one delete and one join
+     */
+    public void join(AVLTree t) {
+        if (this.empty() || t.empty() || t.root.getKey() > this.root.getKey())
+            replaceWith(joinTrees(this, t));
+        else
+            replaceWith(joinTrees(t, this));
+    }
+
    /**
     * in join, if there is a special case (extra to insert)- handle it.
     * Time Complexity - O(1)
@@ -868,42 +1373,486 @@ public class AVLTree {
      * Time Complexity - O( | this.rank - t.rank | + 1 )
      */
     private int joinWithEmpty(IAVLNode x, AVLTree t) {
-    
-    	// UPDATE MIN/MAX
-    	if (this.empty() && t.empty()) {
-    		this.max = x;
-    		this.min = x;
-    	}
-    	else if (this.empty()) { //t is not empty
-    		if(x.getKey() < t.getRoot().getKey()) { 
-    			this.max = t.max;
-    			this.min = x;
-    		}
-    		else { // x is bigger than t keys
-    			this.max = x;
-    			this.min = t.min;
-    		}
-    	}
-    	
     	int complex = Math.abs( this.root.getHeight() - t.getRoot().getHeight() ) + 1;
     	
-        if (this.empty()) {
+        if (this.empty()) { //take t's nodes, min and max
             this.root = t.getRoot();   
+            this.min = t.min;
+            this.max = t.max;
         }
         
-        this.insert(x.getKey(), x.getValue()); //insert should update 'size' field
+        this.insert(x.getKey(), x.getValue()); //insert should update 'size', 'min' and 'max' fields
         return complex;
     }
     
     
+    /**
+     * Joins t1 and t2 without a middle node - the minimum of t2 is taken out of it and used as the joining node.
+     * @pre keys(t1) < keys(t2), either might be empty
+     * @return the joined tree (t1 or t2), the other one is not usable afterwards
+     * Time Complexity - O(log n) - one delete and one join
+     */
+    private static AVLTree joinTrees(AVLTree t1, AVLTree t2) {
+        if (t2.empty())
+            return t1;
+        if (t1.empty())
+            return t2;
+        IAVLNode x = new AVLNode(t2.min.getKey(), t2.min.getValue());
+        t2.delete(x.getKey());
+        t1.join(x, t2);
+        return t1;
+    }
+
+    /**
+     * @return a tree of the subtree of node, which is detached from its parent
+     * Time Complexity - O(log n) - setting min and max
+     */
+    private static AVLTree detach(IAVLNode node) {
+        node.setParent(null); //no-op on a virtual node
+        AVLTree t = new AVLTree(node);
+        t.setMin();
+        t.setMax();
+        return t;
+    }
+
+    /**
+     * split(k), which also works if k is not in the tree - k is inserted first and split() removes it again.
+     * @pre !empty()
+     * @param parts - gets [t1, t2], keys(t1) < k < keys(t2)
+     * @return a new node with the key and info of k, or null if k was not in the tree
+     * Time Complexity - O(log n)
+     */
+    private IAVLNode splitAround(int k, AVLTree[] parts) {
+        IAVLNode found = find(k);
+        IAVLNode copy = found == null ? null : new AVLNode(k, found.getValue());
+        if (found == null)
+            insert(k, null);
+        AVLTree[] split = split(k);
+        parts[0] = split[0];
+        parts[1] = split[1];
+        return copy;
+    }
+
+    /**
+     * union(), intersect() and difference() stop dividing once one of the trees has at most this many keys,
+     * and handle its keys one by one against the other tree
+     */
+    private static final int SET_OPERATION_CUTOFF = 1024;
+
+    /**
+     * public interface ConflictResolver
+     * Chooses the info of a key which is in both trees of union() or intersect().
+     */
+    public interface ConflictResolver {
+        String resolve(int key, String mine, String theirs);
+    }
+
+    /**
+     * public void union(AVLTree t, ConflictResolver resolver)
+     * Makes the tree hold every key of the tree or of t.
+     * The info of a key in both trees is resolver.resolve(key, info in the tree, info in t).
+     * precondition: t != this
+     * postcondition: t is not usable afterwards, as after join()
+     *
+     * The tree is divided by its root, t is split by the root's key, and the halves are united recursively and
+     * joined back around the root - until one of them has at most SET_OPERATION_CUTOFF keys, which are inserted.
+     * Time complexity - O(m log(n/m + 1)) splits and joins for m <= n keys in the smaller tree
+     * (plus O(log n) per recursive call for min/max of the parts).
+     */
+    public void union(AVLTree t, ConflictResolver resolver) {
+        replaceWith(new MergeTask(this, t, resolver, true, false).compute());
+    }
+
+    /**
+     * public void parallelUnion(AVLTree t, ConflictResolver resolver, ForkJoinPool pool)
+     * union(), with the two halves of every division above PARALLEL_CUTOFF keys united in parallel on pool.
+     * The halves share no nodes (split() and join() only touch their own trees, and the virtual node is immutable),
+     * so they need no locking - resolver must be safe to call from several threads.
+     * precondition: t != this
+     * postcondition: t is not usable afterwards, as after join()
+     * Time complexity - as union(), with a span of O(log^2 n) (each level of the division splits and joins)
+     */
+    public void parallelUnion(AVLTree t, ConflictResolver resolver, ForkJoinPool pool) {
+        replaceWith(pool.invoke(new MergeTask(this, t, resolver, true, true)));
+    }
+
+    /**
+     * Inserts t2's items into t1, resolving keys in both
+     * Time complexity - O(m log n) for m keys in t2
+     */
+    private static AVLTree unionOneByOne(AVLTree t1, AVLTree t2, ConflictResolver resolver) {
+        for (Cursor cursor = t2.cursor(); cursor.isValid(); cursor.next()) {
+            IAVLNode x = t1.find(cursor.getKey());
+            if (x == null)
+                t1.insert(cursor.getKey(), cursor.getValue());
+            else
+                ((AVLNode) x).setValue(resolver.resolve(x.getKey(), x.getValue(), cursor.getValue()));
+        }
+        return t1;
+    }
+
+    /**
+     * public void intersect(AVLTree t, ConflictResolver resolver)
+     * Makes the tree hold only the keys which are in both the tree and t,
+     * with info resolver.resolve(key, info in the tree, info in t).
+     * precondition: t != this
+     * postcondition: t is not usable afterwards, as after join()
+     *
+     * Same recursion as union(), a root key which is not in t is dropped by joining the halves with joinTrees().
+     * Time complexity - O(m log(n/m + 1)), as union()
+     */
+    public void intersect(AVLTree t, ConflictResolver resolver) {
+        replaceWith(new MergeTask(this, t, resolver, false, false).compute());
+    }
+
+    /**
+     * public void parallelIntersect(AVLTree t, ConflictResolver resolver, ForkJoinPool pool)
+     * intersect(), in parallel on pool as parallelUnion()
+     * precondition: t != this
+     * postcondition: t is not usable afterwards, as after join()
+     */
+    public void parallelIntersect(AVLTree t, ConflictResolver resolver, ForkJoinPool pool) {
+        replaceWith(pool.invoke(new MergeTask(this, t, resolver, false, true)));
+    }
+
+    /**
+     * Looks the smaller tree's keys up in the larger one, and builds the result from the ones found
+     * Time complexity - O(m log n) for m keys in the smaller tree
+     */
+    private static AVLTree intersectOneByOne(AVLTree t1, AVLTree t2, ConflictResolver resolver) {
+        boolean small1 = t1.size() <= t2.size();
+        AVLTree small = small1 ? t1 : t2;
+        AVLTree large = small1 ? t2 : t1;
+        int[] keys = new int[small.size()];
+        String[] infos = new String[keys.length];
+        int n = 0;
+        for (Cursor cursor = small.cursor(); cursor.isValid(); cursor.next()) {
+            IAVLNode x = large.find(cursor.getKey());
+            if (x != null) {
+                keys[n] = x.getKey();
+                infos[n++] = small1 ? resolver.resolve(x.getKey(), cursor.getValue(), x.getValue())
+                                    : resolver.resolve(x.getKey(), x.getValue(), cursor.getValue());
+            }
+        }
+        return buildFromSorted(Arrays.copyOf(keys, n), Arrays.copyOf(infos, n));
+    }
+
+    /**
+     * union/intersect pieces with more keys than this (together) are divided in parallel by parallelUnion()
+     * and parallelIntersect(), smaller ones sequentially
+     */
+    private static final int PARALLEL_CUTOFF = 1 << 15;
+
+    /**
+     * The recursion of union() and intersect() (and of their parallel versions):
+     * t1 is divided by its root, t2 is split by the root's key, the halves are handled recursively -
+     * in parallel if 'parallel' and the trees are large enough - and joined back around the root
+     * (or without it, for an intersection where it is not in t2).
+     */
+    private static final class MergeTask extends RecursiveTask<AVLTree> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final AVLTree t1;
+        private final AVLTree t2;
+        private final ConflictResolver resolver;
+        private final boolean union; //union, or intersection
+        private final boolean parallel;
+
+        MergeTask(AVLTree t1, AVLTree t2, ConflictResolver resolver, boolean union, boolean parallel) {
+            this.t1 = t1;
+            this.t2 = t2;
+            this.resolver = resolver;
+            this.union = union;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected AVLTree compute() {
+            int size1 = t1.size();
+            int size2 = t2.size();
+            if (!union && (size1 <= SET_OPERATION_CUTOFF || size2 <= SET_OPERATION_CUTOFF))
+                return intersectOneByOne(t1, t2, resolver);
+            if (union && size2 <= SET_OPERATION_CUTOFF)
+                return unionOneByOne(t1, t2, resolver);
+            if (union && size1 <= SET_OPERATION_CUTOFF)
+                return unionOneByOne(t2, t1, (key, mine, theirs) -> resolver.resolve(key, theirs, mine));
+
+            IAVLNode x = t1.root;
+            AVLTree[] parts = new AVLTree[2];
+            IAVLNode other = t2.splitAround(x.getKey(), parts);
+            MergeTask leftTask = new MergeTask(detach(x.getLeft()), parts[0], resolver, union, parallel);
+            MergeTask rightTask = new MergeTask(detach(x.getRight()), parts[1], resolver, union, parallel);
+            AVLTree left, right;
+            if (parallel && size1 + size2 > PARALLEL_CUTOFF) {
+                leftTask.fork();
+                right = rightTask.compute();
+                left = leftTask.join();
+            }
+            else {
+                left = leftTask.compute();
+                right = rightTask.compute();
+            }
+
+            if (other == null && !union)
+                return joinTrees(left, right);
+            String info = other == null ? x.getValue() : resolver.resolve(x.getKey(), x.getValue(), other.getValue());
+            left.join(new AVLNode(x.getKey(), info), right);
+            return left;
+        }
+    }
+
+    /**
+     * public void difference(AVLTree t)
+     * Removes every key of t from the tree.
+     * precondition: t != this
+     * postcondition: t is not usable afterwards, as after join()
+     *
+     * t is divided by its root, the tree is split by the root's key (dropping it), and the halves are handled
+     * recursively and joined back with joinTrees().
+     * Time complexity - O(m log(n/m + 1)), as union()
+     */
+    public void difference(AVLTree t) {
+        replaceWith(difference(this, t));
+    }
+
+    private static AVLTree difference(AVLTree t1, AVLTree t2) {
+        if (t2.size() <= SET_OPERATION_CUTOFF) { //delete t2's keys from t1
+            for (Cursor cursor = t2.cursor(); cursor.isValid(); cursor.next())
+                t1.delete(cursor.getKey());
+            return t1;
+        }
+        if (t1.size() <= SET_OPERATION_CUTOFF) { //keep t1's keys which are not in t2
+            int[] keys = new int[t1.size()];
+            String[] infos = new String[keys.length];
+            int n = 0;
+            for (Cursor cursor = t1.cursor(); cursor.isValid(); cursor.next()) {
+                if (t2.find(cursor.getKey()) == null) {
+                    keys[n] = cursor.getKey();
+                    infos[n++] = cursor.getValue();
+                }
+            }
+            return buildFromSorted(Arrays.copyOf(keys, n), Arrays.copyOf(infos, n));
+        }
+        IAVLNode x = t2.root;
+        AVLTree[] parts = new AVLTree[2];
+        t1.splitAround(x.getKey(), parts);
+        AVLTree left = difference(parts[0], detach(x.getLeft()));
+        AVLTree right = difference(parts[1], detach(x.getRight()));
+        return joinTrees(left, right);
+    }
+
+    /**
+     * public class View
+     * The items of the tree with lo <= key <= hi, read from the tree itself - see splitView().
+     * A view has no nodes of its own, so it always shows the tree's current items in its bounds -
+     * it is not a snapshot, and is read-only.
+     */
+    public class View {
+
+        private final int lo;
+        private final int hi;
+
+        private View(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        /**
+         * Complexity: O(log n)
+         */
+        public boolean empty() {
+            return !cursor().isValid();
+        }
+
+        /**
+         * Returns the info of k if it is in the tree and within the bounds, otherwise null
+         * Complexity: O(log n)
+         */
+        public String search(int k) {
+            return k < this.lo || k > this.hi ? null : AVLTree.this.search(k);
+        }
+
+        /**
+         * Returns the info of the smallest key within the bounds, or null if there is none
+         * Complexity: O(log n)
+         */
+        public String min() {
+            Cursor cursor = cursor();
+            return cursor.isValid() ? cursor.getValue() : null;
+        }
+
+        /**
+         * Returns the info of the largest key within the bounds, or null if there is none
+         * Complexity: O(log n)
+         */
+        public String max() {
+            Cursor cursor = cursor();
+            return cursor.seekLast() ? cursor.getValue() : null;
+        }
+
+        /**
+         * Complexity: O(log n) - countInRange()
+         */
+        public int size() {
+            return countInRange(this.lo, this.hi);
+        }
+
+        /**
+         * Returns a cursor bounded to the view, see AVLTree.cursor(lo, hi)
+         * Complexity: O(log n)
+         */
+        public Cursor cursor() {
+            return AVLTree.this.cursor(this.lo, this.hi);
+        }
+
+        /**
+         * Complexity: O(log n + k) for k items in the view
+         */
+        public int[] keysToArray() {
+            int[] arr = new int[size()];
+            Cursor cursor = cursor();
+            for (int i = 0; i < arr.length; i++) {
+                arr[i] = cursor.getKey();
+                cursor.next();
+            }
+            return arr;
+        }
+
+        /**
+         * Complexity: O(log n + k) for k items in the view
+         */
+        public String[] infoToArray() {
+            String[] arr = new String[size()];
+            Cursor cursor = cursor();
+            for (int i = 0; i < arr.length; i++) {
+                arr[i] = cursor.getValue();
+                cursor.next();
+            }
+            return arr;
+        }
+
+        /**
+         * Returns a new tree with the view's items, which does not change with the tree
+         * Complexity: O(log n + k) for k items in the view - buildFromSorted()
+         */
+        public AVLTree copy() {
+            return buildFromSorted(keysToArray(), infoToArray());
+        }
+    }
+
+    /**
+     * public interface RangeConsumer
+     * Receives the items visited by forEachInRange(), without boxing the keys.
+     */
+    public interface RangeConsumer {
+        void accept(int key, String value);
+    }
+
+    /**
+     * public class Cursor
+     * A position in the tree's in-order, moved by next()/prev() along parent pointers (successor()/predecessor()).
+     * A step allocates nothing and costs O(1) amortized - walking k items is O(log n + k).
+     * A bounded cursor (see cursor(lo, hi)) only visits keys in [lo, hi].
+     * A cursor that moved past either end is not valid, seek methods make it valid again.
+     * The tree must not be changed while a cursor is in use.
+     */
+    public class Cursor {
+
+        private IAVLNode node; //current node, virtual node if not valid
+        private final int lo; //smallest key the cursor may visit
+        private final int hi; //largest key the cursor may visit
+
+        private Cursor(IAVLNode node, int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+            setNode(node);
+        }
+
+        /**
+         * Moves to node, or makes the cursor not valid if node's key is out of [lo, hi]
+         * Complexity: O(1)
+         */
+        private boolean setNode(IAVLNode node) {
+            if (node.isRealNode() && (node.getKey() < this.lo || node.getKey() > this.hi))
+                node = VIRTUAL_NODE;
+            this.node = node;
+            return isValid();
+        }
+
+        /**
+         * Returns true if the cursor is on an item of the tree
+         * Complexity: O(1)
+         */
+        public boolean isValid() {
+            return this.node.isRealNode();
+        }
+
+        /**
+         * @pre isValid()
+         * Complexity: O(1)
+         */
+        public int getKey() {
+            return this.node.getKey();
+        }
+
+        /**
+         * @pre isValid()
+         * Complexity: O(1)
+         */
+        public String getValue() {
+            return this.node.getValue();
+        }
+
+        /**
+         * Moves to the next item by key order, returns isValid()
+         * Complexity: O(1) amortized, O(log n) worst case
+         */
+        public boolean next() {
+            return isValid() && setNode(successor(this.node));
+        }
+
+        /**
+         * Moves to the previous item by key order, returns isValid()
+         * Complexity: O(1) amortized, O(log n) worst case
+         */
+        public boolean prev() {
+            return isValid() && setNode(predecessor(this.node));
+        }
+
+        /**
+         * Moves to the item with the smallest key >= k, returns isValid() (false if there is none in the bounds)
+         * Complexity: O(log n) - a single descent from the root
+         */
+        public boolean seek(int k) {
+            return setNode(ceiling(Math.max(k, this.lo)));
+        }
+
+        /**
+         * Moves to the item with the smallest key, returns isValid() (false if there is none in the bounds)
+         * Complexity: O(1) for an unbounded cursor, O(log n) otherwise
+         */
+        public boolean seekFirst() {
+            return setNode(this.lo == Integer.MIN_VALUE ? min : ceiling(this.lo));
+        }
+
+        /**
+         * Moves to the item with the largest key, returns isValid() (false if there is none in the bounds)
+         * Complexity: O(1) for an unbounded cursor, O(log n) otherwise
+         */
+        public boolean seekLast() {
+            return setNode(this.hi == Integer.MAX_VALUE ? max : floor(this.hi));
+        }
+    }
+
     /**
      * public interface IAVLNode
      * ! Do not delete or modify this - otherwise all tests will fail !
      */
     public interface IAVLNode {
-        public int getKey(); //returns node's key (for virtuval node return -1)
+        public int getKey(); //returns node's key (a virtual node returns -1, which is also a valid real key - test isRealNode(), not the key)
 
-        public String getValue(); //returns node's value [info] (for virtuval node return null)
+        public String getValue(); //returns node's value [info] (for virtual node return null, as a real node's may be)
 
         public void setLeft(IAVLNode node); //sets left child
 
@@ -921,7 +1870,7 @@ public class AVLTree {
 
         public void setHeight(int height); // sets the height of the node
 
-        public int getHeight(); // Returns the height of the node (-1 for virtual nodes)
+        public int getHeight(); // Returns the height of the node (-1 for virtual nodes, but test isRealNode() to tell them apart)
     }
 
     /**
@@ -934,7 +1883,7 @@ public class AVLTree {
      * 
      * All the methods in the class 'AVLNode' have time complexity of O(1)
      */
-    public class AVLNode implements IAVLNode {
+    public static class AVLNode implements IAVLNode {
 
         private String value;
         private int key, rank, size;
@@ -948,15 +1897,15 @@ public class AVLTree {
             this.value = value;
             this.rank = 0;
             this.size = 1;
-            this.left = new AVLNode();
-            this.right = new AVLNode();
+            this.left = VIRTUAL_NODE;
+            this.right = VIRTUAL_NODE;
             this.parent = null;
         }
 
         /**
-         * Constructor of an external leaf
+         * Constructor of an external leaf - used only once, for VIRTUAL_NODE
          */
-        public AVLNode() { 
+        private AVLNode() { 
             this.key = -1;
             this.rank = -1;
             this.size = 0;
@@ -975,10 +1924,12 @@ public class AVLTree {
         }
      
         /**
-         * @pre 'this' is a real node
-         * @pre node != null  
+         * @pre node != null
+         * ignored if 'this' is the shared virtual node
          */
         public void setLeft(IAVLNode node) {
+            if (this == VIRTUAL_NODE)
+                return;
             this.left = node;
         }
 
@@ -987,10 +1938,12 @@ public class AVLTree {
         }
 
         /**
-         * @pre 'this' is a real node
-         * @pre node != null  
+         * @pre node != null
+         * ignored if 'this' is the shared virtual node
          */
         public void setRight(IAVLNode node) {
+            if (this == VIRTUAL_NODE)
+                return;
             this.right = node;
         }
 
@@ -999,9 +1952,12 @@ public class AVLTree {
         }
        
         /**
-         *   @pre if (node != null) --> node.getKey != (-1)
+         *   @pre if (node != null) --> node.isRealNode()
+         *   ignored if 'this' is the shared virtual node - its parent is always null
          */
         public void setParent(IAVLNode node) {
+            if (this == VIRTUAL_NODE)
+                return;
             this.parent = node;
         }
 
@@ -1011,18 +1967,20 @@ public class AVLTree {
 
         /**
          *@pre this != null
-         *@ret true if key != (-1)
+         *@ret true if 'this' is not the shared virtual node - decided by identity,
+         *     so a real node may have any int key, including -1
          */
         public boolean isRealNode() {
-            if (this.key == -1) 	//external leaf
-                return false;
-            return true;
+            return this != VIRTUAL_NODE;
         }
         
         /**
          *@pre height >= -1 
+         *ignored if 'this' is the shared virtual node - its height is always -1
          */
         public void setHeight(int height) {
+            if (this == VIRTUAL_NODE)
+                return;
             this.rank = height;
         }
 
@@ -1031,7 +1989,7 @@ public class AVLTree {
         }
 
         /**
-         * @pre this != null & this.key != (-1)
+         * @pre this != null & this.isRealNode()
          * @ret = 2 if 'this' is Binary node 
          * @ret = 0 if 'this' is leaf
          * @ret = 1 if 'this' is unary with left son 
@@ -1086,7 +2044,7 @@ public class AVLTree {
 
         /**
          * @pre this != null
-         * @pre this.key != (-1)
+         * @pre this.isRealNode()
          */
         private void setSize() {
             this.size = ((AVLNode)this.left).getSize() + ((AVLNode)this.right).getSize() + 1;
@@ -0,0 +1,863 @@
+import java.util.Arrays;
+
+/**
+ * ArrayAVLTree
+ * An implementation of a AVL Tree with
+ * distinct integer keys and info, with the same public API as AVLTree.
+ *
+ * Nodes are not objects - every node is a slot index into parallel arrays
+ * (keys, left, right, parent, rank, size, values) kept in a NodePool.
+ * Slot 0 is the virtual node (rank -1, size 0), so any int is a valid key.
+ * Deleted slots are recycled through a free list.
+ * Trees created by split() share the pool of the tree they were split from.
+ *
+ * Rebalancing follows AVLTree case by case, so insert(), delete() and join()
+ * return exactly the values AVLTree returns for the same sequence of operations.
+ */
+
+public class ArrayAVLTree {
+
+    private static final int NIL = 0; //slot of the virtual node
+
+    private NodePool pool;
+    private int root;
+    private int min;
+    private int max;
+
+    /**
+     * ArrayAVLTree Constructor - initializes an empty tree with its own node pool
+     * Complexity: O(1)
+     */
+    public ArrayAVLTree() {
+        this(new NodePool(16), NIL);
+    }
+
+    /**
+     * Used in making new trees in split()/join() - min and max are not set
+     * Complexity: O(1)
+     */
+    private ArrayAVLTree(NodePool pool, int root) {
+        this.pool = pool;
+        this.root = root;
+        this.min = NIL;
+        this.max = NIL;
+    }
+
+    /**
+     * public boolean empty()
+     * returns true if and only if the tree is empty
+     * Complexity: O(1)
+     */
+    public boolean empty() {
+        return this.root == NIL;
+    }
+
+    /**
+     * public String search(int k)
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns null
+     * Complexity: O(log n)
+     */
+    public String search(int k) {
+        return this.pool.value[find(k)]; //value of the virtual node is null
+    }
+
+    /**
+     * public int insert(int k, String i)
+     * inserts an item with key k and info i to the AVL tree.
+     * returns the number of rebalancing operations as AVLTree.insert() does,
+     * or -1 if an item with key k already exists in the tree.
+     * Complexity: O(log n)
+     */
+    public int insert(int k, String i) {
+        if (this.empty()) {
+            this.root = this.pool.allocate(k, i);
+            this.min = this.root;
+            this.max = this.root;
+            return 0;
+        }
+        int parent = findParent(k);
+        if (parent == NIL) { //k is in tree
+            return -1;
+        }
+        int node = this.pool.allocate(k, i);
+        int balanceProcesses = attach(node, parent);
+
+        int[] key = this.pool.key;
+        if (k < key[this.min]) {
+            this.min = node;
+        }
+        if (k > key[this.max]) {
+            this.max = node;
+        }
+        return balanceProcesses;
+    }
+
+    /**
+     * Hangs node under parent, rebalances and fixes sizes up to the root.
+     * @return the amount of balance operations, as in AVLTree.insert()
+     * Complexity: O(log n)
+     */
+    private int attach(int node, int parent) {
+        NodePool p = this.pool;
+        p.parent[node] = parent;
+        if (p.key[node] < p.key[parent]) {
+            p.left[parent] = node;
+        }
+        else {
+            p.right[parent] = node;
+        }
+        int balanceProcesses = 0;
+        //balancing is needed only if parent was a leaf
+        if (p.rank[parent] == 0) {
+            balanceProcesses = balanceTreeAfterInsert(node);
+        }
+        updateSizeUntilTheRoot(node);
+        return balanceProcesses;
+    }
+
+    /**
+     * Iterative version of AVLTree.balanceTreeAfterInsert() - same cases, same counts.
+     * @return the amount of balance operations used in the insertion process.
+     * Complexity: O(log n)
+     */
+    private int balanceTreeAfterInsert(int node) {
+        NodePool p = this.pool;
+        int[] rank = p.rank, left = p.left, right = p.right, parent = p.parent;
+        int balanceProcesses = 0;
+        while (true) {
+            int x = parent[node];
+            if (x == NIL) { //we reached the root
+                return 0;
+            }
+            if (rank[x] - rank[left[x]] == 0) {
+                if (rank[x] - rank[right[x]] == 1) { //x is a 1,1 node - case 1 (Promote)
+                    rank[x]++;
+                    balanceProcesses++;
+                    node = x;
+                    continue;
+                }
+                if (rank[node] - rank[right[node]] == 2) { //node is a 1,2 node - case 2 (Rotate)
+                    rank[x]--;
+                    rotateRight(x);
+                    return balanceProcesses + 2;
+                }
+                //node is a 2,1 node - case 3 (Double Rotate)
+                rank[x]--;
+                rank[node]--;
+                rank[right[node]]++;
+                rotateLeft(node);
+                rotateRight(x);
+                return balanceProcesses + 5;
+            }
+            //mirrored 3 cases
+            if (rank[x] - rank[right[x]] == 0) {
+                if (rank[x] - rank[left[x]] == 1) {
+                    rank[x]++;
+                    balanceProcesses++;
+                    node = x;
+                    continue;
+                }
+                if (rank[node] - rank[left[node]] == 2) {
+                    rank[x]--;
+                    rotateLeft(x);
+                    return balanceProcesses + 2;
+                }
+                rank[x]--;
+                rank[node]--;
+                rank[left[node]]++;
+                rotateRight(node);
+                rotateLeft(x);
+                return balanceProcesses + 5;
+            }
+            return balanceProcesses;
+        }
+    }
+
+    /**
+     * public int delete(int k)
+     * deletes an item with key k from the binary tree, if it is there.
+     * returns the number of rebalancing operations as AVLTree.delete() does,
+     * or -1 if an item with key k was not found in the tree.
+     * Complexity: O(log n)
+     */
+    public int delete(int k) {
+        int x = find(k);
+        if (x == NIL) {
+            return -1;
+        }
+        NodePool p = this.pool;
+        int removed = x;
+        if (p.left[x] != NIL && p.right[x] != NIL) { //binary - replace x with its successor
+            removed = minByNode(p.right[x]);
+            p.key[x] = p.key[removed];
+            p.value[x] = p.value[removed];
+        }
+        int child = p.left[removed] != NIL ? p.left[removed] : p.right[removed];
+        int parent = p.parent[removed];
+        if (child != NIL) {
+            p.parent[child] = parent;
+        }
+        if (parent == NIL) {
+            this.root = child;
+        }
+        else if (p.left[parent] == removed) {
+            p.left[parent] = child;
+        }
+        else {
+            p.right[parent] = child;
+        }
+        p.free(removed);
+
+        int balanceProcesses = balanceTreeAfterDelete(parent);
+        updateSizeUntilTheRoot(parent);
+
+        //the min/max slot is only lost if it was physically removed
+        if (removed == this.min) {
+            this.min = minByNode(this.root);
+        }
+        if (removed == this.max) {
+            this.max = maxByNode(this.root);
+        }
+        return balanceProcesses;
+    }
+
+    /**
+     * Iterative version of AVLTree.balanceTreeAfterDelete() - same cases, same counts.
+     * Sizes are not maintained here - the caller walks up from the deleted node's parent.
+     * Complexity: O(log n)
+     */
+    private int balanceTreeAfterDelete(int x) {
+        NodePool p = this.pool;
+        int[] rank = p.rank, left = p.left, right = p.right, parent = p.parent;
+        int balanceProcesses = 0;
+        while (x != NIL) {
+            int difL = rank[x] - rank[left[x]];
+            int difR = rank[x] - rank[right[x]];
+            if ((difL == 1 && difR == 2) || (difL == 2 && difR == 1)) { //problem solved
+                break;
+            }
+            if (difL == 2 && difR == 2) { //demote, problem solved or moved upper
+                rank[x]--;
+                balanceProcesses++;
+                x = parent[x];
+                continue;
+            }
+            if (difL == 3 && difR == 1) {
+                int tmp = right[x];
+                difL = rank[tmp] - rank[left[tmp]];
+                difR = rank[tmp] - rank[right[tmp]];
+                if ((difL == 1 && difR == 1) || (difL == 2 && difR == 1)) { //rotate left once
+                    rotateLeft(x);
+                    balanceProcesses += 3;
+                    if (difL == 1) { //problem solved
+                        rank[x]--;
+                        rank[tmp]++;
+                        break;
+                    }
+                    rank[x] -= 2;
+                    x = parent[tmp];
+                }
+                else { //double rotate left
+                    rotateRight(tmp);
+                    rotateLeft(x);
+                    rank[x] -= 2;
+                    rank[tmp]--;
+                    rank[parent[tmp]]++;
+                    balanceProcesses += 6;
+                    x = parent[parent[tmp]];
+                }
+            }
+            else { //difR == 3 && difL == 1
+                int tmp = left[x];
+                difL = rank[tmp] - rank[left[tmp]];
+                difR = rank[tmp] - rank[right[tmp]];
+                if ((difL == 1 && difR == 1) || (difL == 1 && difR == 2)) { //rotate right once
+                    rotateRight(x);
+                    balanceProcesses += 3;
+                    if (difR == 1) { //problem solved
+                        rank[x]--;
+                        rank[tmp]++;
+                        break;
+                    }
+                    rank[x] -= 2;
+                    x = parent[tmp];
+                }
+                else { //double rotate right - counted as in AVLTree
+                    rotateLeft(tmp);
+                    rotateRight(x);
+                    rank[x] -= 2;
+                    rank[tmp]--;
+                    rank[parent[tmp]]++;
+                    balanceProcesses += 8;
+                    x = parent[parent[tmp]];
+                }
+            }
+        }
+        return balanceProcesses;
+    }
+
+    /**
+     * Recomputes sizes from node up to the root, fixes this.root on the way.
+     * Complexity: O(log n)
+     */
+    private void updateSizeUntilTheRoot(int node) {
+        NodePool p = this.pool;
+        int[] size = p.size, left = p.left, right = p.right, parent = p.parent;
+        while (node != NIL) {
+            size[node] = size[left[node]] + size[right[node]] + 1;
+            if (parent[node] == NIL) {
+                this.root = node;
+            }
+            node = parent[node];
+        }
+    }
+
+    /**
+     * rotate left once the subTree of x, keeping this.root up to date
+     * Complexity: O(1)
+     */
+    private void rotateLeft(int x) {
+        NodePool p = this.pool;
+        int[] left = p.left, right = p.right, parent = p.parent, size = p.size;
+        int y = right[x];
+        int xParent = parent[x];
+        parent[y] = xParent;
+        if (xParent == NIL) {
+            this.root = y;
+        }
+        else if (left[xParent] == x) {
+            left[xParent] = y;
+        }
+        else {
+            right[xParent] = y;
+        }
+        right[x] = left[y];
+        if (left[y] != NIL) {
+            parent[left[y]] = x;
+        }
+        left[y] = x;
+        parent[x] = y;
+        size[x] = size[left[x]] + size[right[x]] + 1;
+        size[y] = size[left[y]] + size[right[y]] + 1;
+    }
+
+    /**
+     * rotate right once the subTree of x, keeping this.root up to date
+     * Complexity: O(1)
+     */
+    private void rotateRight(int x) {
+        NodePool p = this.pool;
+        int[] left = p.left, right = p.right, parent = p.parent, size = p.size;
+        int y = left[x];
+        int xParent = parent[x];
+        parent[y] = xParent;
+        if (xParent == NIL) {
+            this.root = y;
+        }
+        else if (left[xParent] == x) {
+            left[xParent] = y;
+        }
+        else {
+            right[xParent] = y;
+        }
+        left[x] = right[y];
+        if (right[y] != NIL) {
+            parent[right[y]] = x;
+        }
+        right[y] = x;
+        parent[x] = y;
+        size[x] = size[left[x]] + size[right[x]] + 1;
+        size[y] = size[left[y]] + size[right[y]] + 1;
+    }
+
+    /**
+     * @return the slot with key k, or NIL if not found
+     * Complexity: O(log n)
+     */
+    private int find(int k) {
+        int[] key = this.pool.key, left = this.pool.left, right = this.pool.right;
+        int node = this.root;
+        while (node != NIL) {
+            int nodeKey = key[node];
+            if (nodeKey == k) {
+                return node;
+            }
+            node = nodeKey > k ? left[node] : right[node];
+        }
+        return NIL;
+    }
+
+    /**
+     * @pre !empty()
+     * @return the parent of a new node with key k, or NIL if k is in the tree
+     * Complexity: O(log n)
+     */
+    private int findParent(int k) {
+        int[] key = this.pool.key, left = this.pool.left, right = this.pool.right;
+        int parent = NIL;
+        int node = this.root;
+        while (node != NIL) {
+            int nodeKey = key[node];
+            if (nodeKey == k) {
+                return NIL;
+            }
+            parent = node;
+            node = nodeKey > k ? left[node] : right[node];
+        }
+        return parent;
+    }
+
+    /**
+     * Finds the leftmost node from a given node, NIL if node is NIL
+     * Complexity: O(log n)
+     */
+    private int minByNode(int node) {
+        int[] left = this.pool.left;
+        if (node == NIL) {
+            return NIL;
+        }
+        while (left[node] != NIL) {
+            node = left[node];
+        }
+        return node;
+    }
+
+    /**
+     * Finds the rightmost node from a given node, NIL if node is NIL
+     * Complexity: O(log n)
+     */
+    private int maxByNode(int node) {
+        int[] right = this.pool.right;
+        if (node == NIL) {
+            return NIL;
+        }
+        while (right[node] != NIL) {
+            node = right[node];
+        }
+        return node;
+    }
+
+    /**
+     * public String min()
+     * Returns the info of the item with the smallest key in the tree,
+     * or null if the tree is empty
+     * Complexity: O(1)
+     */
+    public String min() {
+        return this.pool.value[this.min];
+    }
+
+    /**
+     * public String max()
+     * Returns the info of the item with the largest key in the tree,
+     * or null if the tree is empty
+     * Complexity: O(1)
+     */
+    public String max() {
+        return this.pool.value[this.max];
+    }
+
+    /**
+     * public int[] keysToArray()
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty.
+     * Complexity: O(n)
+     */
+    public int[] keysToArray() {
+        int[] arr = new int[size()];
+        int[] key = this.pool.key;
+        int[] stack = new int[this.pool.rank[this.root] + 2];
+        int top = 0;
+        int pos = 0;
+        int node = this.root;
+        while (node != NIL || top > 0) {
+            while (node != NIL) {
+                stack[top++] = node;
+                node = this.pool.left[node];
+            }
+            node = stack[--top];
+            arr[pos++] = key[node];
+            node = this.pool.right[node];
+        }
+        return arr;
+    }
+
+    /**
+     * public String[] infoToArray()
+     * Returns an array which contains all info in the tree,
+     * sorted by their respective keys,
+     * or an empty array if the tree is empty.
+     * Complexity: O(n)
+     */
+    public String[] infoToArray() {
+        String[] arr = new String[size()];
+        String[] value = this.pool.value;
+        int[] stack = new int[this.pool.rank[this.root] + 2];
+        int top = 0;
+        int pos = 0;
+        int node = this.root;
+        while (node != NIL || top > 0) {
+            while (node != NIL) {
+                stack[top++] = node;
+                node = this.pool.left[node];
+            }
+            node = stack[--top];
+            arr[pos++] = value[node];
+            node = this.pool.right[node];
+        }
+        return arr;
+    }
+
+    /**
+     * public int size()
+     * Returns the number of nodes in the tree.
+     * Complexity: O(1)
+     */
+    public int size() {
+        return this.pool.size[this.root];
+    }
+
+    /**
+     * Returns the number of slots of the pool which were ever in use (the virtual node aside) -
+     * free slots included, so it only grows when the free list is empty. Used by the tests.
+     * Complexity: O(1)
+     */
+    int allocatedSlots() {
+        return this.pool.next - 1;
+    }
+
+    /**
+     * public ArrayAVLTree[] split(int x)
+     * splits the tree into 2 trees according to the key x.
+     * Returns an array [t1, t2] with two AVL trees. keys(t1) < x < keys(t2).
+     * Both trees share this tree's node pool, and this tree is left empty.
+     * precondition: search(x) != null
+     * Complexity: O(log n)
+     */
+    public ArrayAVLTree[] split(int x) {
+        NodePool p = this.pool;
+        int node = find(x);
+
+        ArrayAVLTree t1 = new ArrayAVLTree(p, p.left[node]);
+        ArrayAVLTree t2 = new ArrayAVLTree(p, p.right[node]);
+        p.parent[p.left[node]] = NIL; //writing NIL's parent is harmless - it is never read
+        p.parent[p.right[node]] = NIL;
+
+        int child = node;
+        int parent = p.parent[node];
+        p.free(node);
+        while (parent != NIL) {
+            int grandParent = p.parent[parent];
+            boolean fromRight = p.right[parent] == child;
+            int other = fromRight ? p.left[parent] : p.right[parent];
+            p.parent[other] = NIL;
+            p.reset(parent); //parent is reused as the joining node
+            if (fromRight) {
+                t1.joinNodes(parent, new ArrayAVLTree(p, other));
+            }
+            else {
+                t2.joinNodes(parent, new ArrayAVLTree(p, other));
+            }
+            child = parent;
+            parent = grandParent;
+        }
+        t1.min = t1.minByNode(t1.root);
+        t1.max = t1.maxByNode(t1.root);
+        t2.min = t2.minByNode(t2.root);
+        t2.max = t2.maxByNode(t2.root);
+
+        this.root = NIL;
+        this.min = NIL;
+        this.max = NIL;
+        return new ArrayAVLTree[]{t1, t2};
+    }
+
+    /**
+     * public int join(int k, String i, ArrayAVLTree t)
+     * joins t and a new item (k, i) with the tree.
+     * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+     * If t uses a different node pool, its nodes are first copied into this tree's pool - O(|t|).
+     * precondition: keys(k,t) < keys() or keys(k,t) > keys(). t/tree might be empty (rank = -1).
+     * Complexity: O(log n) - the rebalancing is O(|tree.rank - t.rank| + 1), fixing sizes and min/max is O(log n)
+     */
+    public int join(int k, String i, ArrayAVLTree t) {
+        if (t.pool != this.pool) {
+            t = new ArrayAVLTree(this.pool, this.pool.copyFrom(t.pool, t.root));
+        }
+        int x = this.pool.allocate(k, i);
+        int[] key = this.pool.key; //after allocate() - it may grow the arrays
+        int newMin = this.empty() || k < key[this.min] ? x : this.min;
+        int newMax = this.empty() || k > key[this.max] ? x : this.max;
+        if (!t.empty()) {
+            int tMin = minByNode(t.root);
+            int tMax = maxByNode(t.root);
+            newMin = key[tMin] < key[newMin] ? tMin : newMin;
+            newMax = key[tMax] > key[newMax] ? tMax : newMax;
+        }
+        int complex = joinNodes(x, t);
+        this.min = newMin;
+        this.max = newMax;
+        return complex;
+    }
+
+    /**
+     * Joins node x and tree t (sharing this pool) into this tree - does not maintain min/max.
+     * Mirrors AVLTree.join(), including its special case.
+     * Complexity: O(|tree.rank - t.rank| + 1)
+     */
+    private int joinNodes(int x, ArrayAVLTree t) {
+        NodePool p = this.pool;
+        int[] rank = p.rank;
+        int complex = Math.abs(rank[this.root] - rank[t.root]) + 1;
+        if (this.empty() || t.empty()) { //insert x into the non-empty one, as AVLTree does
+            if (this.empty()) {
+                this.root = t.root;
+            }
+            if (this.empty()) {
+                this.root = x;
+            }
+            else {
+                attach(x, findParent(p.key[x]));
+            }
+            return complex;
+        }
+        if (p.key[t.root] > p.key[this.root]) { //t.keys > x.key > this.keys
+            if (rank[t.root] > rank[this.root]) {
+                joinOnLeft(this.root, x, t.root);
+            }
+            else if (rank[t.root] < rank[this.root]) {
+                joinOnRight(this.root, x, t.root);
+            }
+            else {
+                joinInPlace(this.root, x, t.root);
+            }
+        }
+        else { //t.keys < x.key < this.keys
+            if (rank[this.root] > rank[t.root]) {
+                joinOnLeft(t.root, x, this.root);
+            }
+            else if (rank[this.root] < rank[t.root]) {
+                joinOnRight(t.root, x, this.root);
+            }
+            else {
+                joinInPlace(t.root, x, this.root);
+            }
+        }
+        p.size[x] = p.size[p.left[x]] + p.size[p.right[x]] + 1;
+        specialCaseForJoin(x);
+        balanceTreeAfterInsert(x);
+        updateSizeUntilTheRoot(x);
+        return complex;
+    }
+
+    /**
+     * Same special case as AVLTree.specialCaseForJoin()
+     * Complexity: O(1)
+     */
+    private void specialCaseForJoin(int x) {
+        NodePool p = this.pool;
+        int[] rank = p.rank, left = p.left, right = p.right;
+        int xParent = p.parent[x];
+        if (xParent == NIL) {
+            return;
+        }
+        int difL1 = rank[x] - rank[left[x]];
+        int difR1 = rank[x] - rank[right[x]];
+        int difL2 = rank[xParent] - rank[left[xParent]];
+        int difR2 = rank[xParent] - rank[right[xParent]];
+        if (left[xParent] == x) {
+            if (difL1 == difR1 && difL1 == 1 && difL2 == 0 && difR2 == 2) {
+                rotateRight(xParent);
+                rank[x]++;
+            }
+        }
+        else if (difL1 == difR1 && difL1 == 1 && difL2 == 2 && difR2 == 0) {
+            rotateLeft(xParent);
+            rank[x]++;
+        }
+    }
+
+    /**
+     * @pre keys(r1) < x < keys(r2), r2 is higher than r1
+     * Complexity: O(rank(r2) - rank(r1) + 1)
+     */
+    private void joinOnLeft(int r1, int x, int r2) {
+        NodePool p = this.pool;
+        int[] rank = p.rank, left = p.left, right = p.right, parent = p.parent;
+        int tmp = r2;
+        while (rank[left[tmp]] > rank[r1]) { //go down on the left side of r2
+            tmp = left[tmp];
+        }
+        right[x] = left[tmp];
+        if (right[x] != NIL) {
+            parent[right[x]] = x;
+        }
+        left[tmp] = x;
+        parent[x] = tmp;
+        left[x] = r1;
+        parent[r1] = x;
+        rank[x] = Math.max(rank[left[x]], rank[right[x]]) + 1;
+        this.root = r2;
+    }
+
+    /**
+     * @pre keys(r1) < x < keys(r2), r1 is higher than r2
+     * Complexity: O(rank(r1) - rank(r2) + 1)
+     */
+    private void joinOnRight(int r1, int x, int r2) {
+        NodePool p = this.pool;
+        int[] rank = p.rank, left = p.left, right = p.right, parent = p.parent;
+        int tmp = r1;
+        while (rank[right[tmp]] > rank[r2]) { //go down on the right side of r1
+            tmp = right[tmp];
+        }
+        left[x] = right[tmp];
+        if (left[x] != NIL) {
+            parent[left[x]] = x;
+        }
+        right[tmp] = x;
+        parent[x] = tmp;
+        right[x] = r2;
+        parent[r2] = x;
+        rank[x] = Math.max(rank[left[x]], rank[right[x]]) + 1;
+        this.root = r1;
+    }
+
+    /**
+     * @pre keys(r1) < x < keys(r2), r1 and r2 have the same rank
+     * Complexity: O(1)
+     */
+    private void joinInPlace(int r1, int x, int r2) {
+        NodePool p = this.pool;
+        p.left[x] = r1;
+        p.right[x] = r2;
+        p.parent[r1] = x;
+        p.parent[r2] = x;
+        p.rank[x] = p.rank[r1] + 1;
+        this.root = x;
+    }
+
+    /**
+     * NodePool
+     * Parallel arrays holding the nodes of one or more trees, indexed by slot.
+     * Slot 0 is the virtual node. Free slots are chained through left[].
+     */
+    private static final class NodePool {
+
+        private int[] key, left, right, parent, rank, size;
+        private String[] value;
+        private int next; //first never-used slot
+        private int free; //head of the free list, NIL if empty
+
+        private NodePool(int capacity) {
+            this.key = new int[capacity];
+            this.left = new int[capacity];
+            this.right = new int[capacity];
+            this.parent = new int[capacity];
+            this.rank = new int[capacity];
+            this.size = new int[capacity];
+            this.value = new String[capacity];
+            this.rank[NIL] = -1;
+            this.next = 1;
+            this.free = NIL;
+        }
+
+        /**
+         * @return a new leaf slot holding (k, i)
+         * Complexity: O(1) amortized
+         */
+        private int allocate(int k, String i) {
+            int slot;
+            if (this.free != NIL) {
+                slot = this.free;
+                this.free = this.left[slot];
+            }
+            else {
+                if (this.next == this.key.length) {
+                    grow();
+                }
+                slot = this.next++;
+            }
+            this.key[slot] = k;
+            this.value[slot] = i;
+            reset(slot);
+            return slot;
+        }
+
+        /**
+         * Detaches slot from everything and makes it a leaf
+         * Complexity: O(1)
+         */
+        private void reset(int slot) {
+            this.left[slot] = NIL;
+            this.right[slot] = NIL;
+            this.parent[slot] = NIL;
+            this.rank[slot] = 0;
+            this.size[slot] = 1;
+        }
+
+        /**
+         * Returns slot to the free list
+         * Complexity: O(1)
+         */
+        private void free(int slot) {
+            this.value[slot] = null;
+            this.left[slot] = this.free;
+            this.free = slot;
+        }
+
+        private void grow() {
+            int capacity = this.key.length * 2;
+            this.key = Arrays.copyOf(this.key, capacity);
+            this.left = Arrays.copyOf(this.left, capacity);
+            this.right = Arrays.copyOf(this.right, capacity);
+            this.parent = Arrays.copyOf(this.parent, capacity);
+            this.rank = Arrays.copyOf(this.rank, capacity);
+            this.size = Arrays.copyOf(this.size, capacity);
+            this.value = Arrays.copyOf(this.value, capacity);
+        }
+
+        /**
+         * Copies the subtree rooted at src's slot 'root' into this pool, keeping its shape.
+         * @return the slot of the copied root
+         * Complexity: O(size of the subtree)
+         */
+        private int copyFrom(NodePool src, int root) {
+            if (root == NIL) {
+                return NIL;
+            }
+            int[] stack = new int[2 * (src.rank[root] + 2)]; //pairs of (source slot, new parent)
+            int top = 0;
+            int newRoot = NIL;
+            stack[top++] = root;
+            stack[top++] = NIL;
+            while (top > 0) {
+                int newParent = stack[--top];
+                int slot = stack[--top];
+                int copy = allocate(src.key[slot], src.value[slot]);
+                this.rank[copy] = src.rank[slot];
+                this.size[copy] = src.size[slot];
+                this.parent[copy] = newParent;
+                if (newParent == NIL) {
+                    newRoot = copy;
+                }
+                else if (src.key[slot] < this.key[newParent]) {
+                    this.left[newParent] = copy;
+                }
+                else {
+                    this.right[newParent] = copy;
+                }
+                if (src.left[slot] != NIL) {
+                    stack[top++] = src.left[slot];
+                    stack[top++] = copy;
+                }
+                if (src.right[slot] != NIL) {
+                    stack[top++] = src.right[slot];
+                    stack[top++] = copy;
+                }
+            }
+            return newRoot;
+        }
+    }
+}
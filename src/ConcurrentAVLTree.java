@@ -0,0 +1,276 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * ConcurrentAVLTree
+ * A thread-safe facade over AVLTree, guarded by one StampedLock.
+ *
+ * search(), min(), max() and size() first read the tree under an optimistic stamp, with no locking at all,
+ * and only take the read lock if a write happened meanwhile (the stamp does not validate).
+ * An optimistic read can see the tree in the middle of a rotation, so it never trusts what it read
+ * before validating, is bounded in steps, and treats any exception as a failed validation.
+ *
+ * Writers use flat combining: a write is queued, and whichever writer gets the write lock applies all the
+ * queued writes under that one acquisition, so a burst of writers costs a few lock handovers rather than one each.
+ * The other writers spin on their own write's done flag meanwhile.
+ * A write which throws (AVLTree's insert/delete, or an Error such as OutOfMemoryError) is still marked done,
+ * and what it threw is rethrown by the writer which queued it - not by the one combining it.
+ */
+
+public class ConcurrentAVLTree {
+
+    /**
+     * an optimistic search giving up after this many steps read an inconsistent tree - no AVL tree of
+     * Integer.MAX_VALUE nodes is this high (height < 1.45 log(n + 2))
+     */
+    private static final int MAX_STEPS = 64;
+
+    /**
+     * a writer spins this many times on its write (trying the lock in between) before blocking on the lock
+     */
+    private static final int SPINS = 256;
+
+    /**
+     * the most writes applied under one write lock acquisition, so the combining thread is not held up for long
+     */
+    private static final int MAX_BATCH = 1024;
+
+    private static final String INCONSISTENT = new String("inconsistent"); //marker, compared by identity
+
+    private final AVLTree tree;
+    private final StampedLock lock = new StampedLock();
+    private final ConcurrentLinkedQueue<Write> writes = new ConcurrentLinkedQueue<>();
+
+    /**
+     * A queued insert or delete, and its result once done
+     */
+    private static final class Write {
+        private final boolean insert;
+        private final int key;
+        private final String value;
+        private int result;             //written before done, read after it
+        private Throwable failure;      //what applying the write threw, if anything - as result
+        private volatile boolean done;
+
+        private Write(boolean insert, int key, String value) {
+            this.insert = insert;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * ConcurrentAVLTree Constructor - an empty tree
+     * Complexity: O(1)
+     */
+    public ConcurrentAVLTree() {
+        this(new AVLTree());
+    }
+
+    /**
+     * A facade over tree, which no one else may use afterwards - used by the tests, to fail writes on purpose
+     */
+    ConcurrentAVLTree(AVLTree tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * public String search(int k)
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns null
+     * Complexity: O(log n) - without locking unless a write interferes
+     */
+    public String search(int k) {
+        long stamp = this.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            String value = searchOptimistic(k);
+            if (value != INCONSISTENT && this.lock.validate(stamp))
+                return value;
+        }
+        stamp = this.lock.readLock();
+        try {
+            return this.tree.search(k);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * A search which may run during a write - returns INCONSISTENT if what it read cannot be a valid tree
+     */
+    private String searchOptimistic(int k) {
+        try {
+            AVLTree.IAVLNode node = this.tree.getRoot();
+            for (int steps = 0; steps < MAX_STEPS; steps++) {
+                if (node == null || !node.isRealNode())
+                    return null;
+                if (node.getKey() == k)
+                    return node.getValue();
+                node = k < node.getKey() ? node.getLeft() : node.getRight();
+            }
+        } catch (RuntimeException e) {
+            //read a node in the middle of a change - validation would fail too
+        }
+        return INCONSISTENT;
+    }
+
+    /**
+     * public String min()
+     * Complexity: O(1) - without locking unless a write interferes
+     */
+    public String min() {
+        long stamp = this.lock.tryOptimisticRead();
+        String value = this.tree.min(); //a single read of the min node
+        if (stamp != 0 && this.lock.validate(stamp))
+            return value;
+        stamp = this.lock.readLock();
+        try {
+            return this.tree.min();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * public String max()
+     * Complexity: O(1) - without locking unless a write interferes
+     */
+    public String max() {
+        long stamp = this.lock.tryOptimisticRead();
+        String value = this.tree.max(); //a single read of the max node
+        if (stamp != 0 && this.lock.validate(stamp))
+            return value;
+        stamp = this.lock.readLock();
+        try {
+            return this.tree.max();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * public int size()
+     * Complexity: O(1) - without locking unless a write interferes
+     */
+    public int size() {
+        long stamp = this.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                int size = this.tree.size();
+                if (this.lock.validate(stamp))
+                    return size;
+            } catch (RuntimeException e) {
+                //read the root in the middle of a change - take the read lock
+            }
+        }
+        stamp = this.lock.readLock();
+        try {
+            return this.tree.size();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * public void forEachInRange(int lo, int hi, AVLTree.RangeConsumer consumer)
+     * Passes every item with lo <= key <= hi to consumer, in key order, under the read lock -
+     * consumer must not write to this tree.
+     * Complexity: O(log n + k) for k items in range
+     */
+    public void forEachInRange(int lo, int hi, AVLTree.RangeConsumer consumer) {
+        long stamp = this.lock.readLock();
+        try {
+            this.tree.forEachInRange(lo, hi, consumer);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * public int[] keysToArray()
+     * Complexity: O(n), under the read lock
+     */
+    public int[] keysToArray() {
+        long stamp = this.lock.readLock();
+        try {
+            return this.tree.keysToArray();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * public String[] infoToArray()
+     * Complexity: O(n), under the read lock
+     */
+    public String[] infoToArray() {
+        long stamp = this.lock.readLock();
+        try {
+            return this.tree.infoToArray();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * public int insert(int k, String i)
+     * inserts an item with key k and info i, returns as AVLTree.insert()
+     * Complexity: O(log n), applied by whichever writer holds the write lock - see write()
+     */
+    public int insert(int k, String i) {
+        return write(new Write(true, k, i));
+    }
+
+    /**
+     * public int delete(int k)
+     * deletes an item with key k if it is there, returns as AVLTree.delete()
+     * Complexity: O(log n), applied by whichever writer holds the write lock - see write()
+     */
+    public int delete(int k) {
+        return write(new Write(false, k, null));
+    }
+
+    /**
+     * Queues w, and waits for it to be applied - by this thread, if it gets the write lock first.
+     * Writes are applied in queue order, so each writer's own writes keep their order.
+     */
+    private int write(Write w) {
+        this.writes.add(w);
+        for (int spins = 0; !w.done; spins++) {
+            long stamp = spins < SPINS ? this.lock.tryWriteLock() : this.lock.writeLock();
+            if (stamp != 0) {
+                try {
+                    applyWrites();
+                } finally {
+                    this.lock.unlockWrite(stamp);
+                }
+            }
+            else {
+                Thread.onSpinWait();
+            }
+        }
+        if (w.failure instanceof RuntimeException)
+            throw (RuntimeException) w.failure;
+        if (w.failure instanceof Error)
+            throw (Error) w.failure;
+        return w.result;
+    }
+
+    /**
+     * @pre the write lock is held
+     * Applies the queued writes, at most MAX_BATCH of them. A write which throws is done all the same,
+     * with what it threw kept for its writer - it never escapes into this thread, or leaves its writer waiting.
+     */
+    private void applyWrites() {
+        Write w;
+        for (int n = 0; n < MAX_BATCH && (w = this.writes.poll()) != null; n++) {
+            try {
+                w.result = w.insert ? this.tree.insert(w.key, w.value) : this.tree.delete(w.key);
+            } catch (Throwable t) {
+                w.failure = t;
+            } finally {
+                w.done = true;
+            }
+        }
+    }
+}
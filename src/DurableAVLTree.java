@@ -0,0 +1,517 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * DurableAVLTree
+ * An AVLTree kept in a directory - a snapshot of the tree, and a write-ahead log of every
+ * insert, delete, split and join since the snapshot. open() loads the snapshot and replays the log.
+ *
+ * Group commit: every write is appended to a log buffer before it is applied to the tree; the buffer is written
+ * and forced to disk once per groupSize writes, or by a write arriving maxDelayMicros or more after the oldest
+ * unforced one (and on sync() and close()), so one fsync is shared by the whole group.
+ * A write is durable once its group is forced - a crash loses at most the writes of the unforced group,
+ * and never leaves the tree in a state between two writes.
+ * The delay is checked by the writes themselves, there is no timer thread: a group is not closed until the next
+ * write or sync(), so a caller which needs a write to be durable before going idle calls sync().
+ *
+ * Failures: a write whose logging throws IOException is not applied to the tree (it may still be in the log,
+ * and be replayed by the next open()), and the instance is failed - every later write, sync() and checkpoint()
+ * throws IOException, as the log's state is unknown. open() the directory again to go on.
+ *
+ * Checkpoints: once snapshotEvery writes are logged, the tree is written to a new snapshot
+ * (AVLTree.writeTo(), then an atomic rename) and the log is truncated. Snapshot and log carry a generation,
+ * so a crash between the rename and the truncation does not replay the old log on the new snapshot.
+ *
+ * files:  snapshot - generation (8 bytes), then the AVLTree.writeTo() snapshot
+ *         wal      - magic "AVLW" and generation (12 bytes), then records of
+ *                    payload length (4 bytes), CRC32 of the payload (4 bytes), payload - an op byte and its arguments.
+ *                    A record cut short or failing its CRC is a torn write of the last group, and ends the log.
+ *
+ * Not thread-safe, as AVLTree.
+ */
+
+public class DurableAVLTree implements Closeable {
+
+    private static final int MAGIC = 0x41564C57; //"AVLW"
+    private static final int LOG_HEADER = 12;
+    private static final int DEFAULT_GROUP_SIZE = 64;
+    private static final long DEFAULT_MAX_DELAY_MICROS = 1000;
+    private static final int DEFAULT_SNAPSHOT_EVERY = 1 << 20;
+
+    private static final byte INSERT = 1;
+    private static final byte DELETE = 2;
+    private static final byte SPLIT = 3;
+    private static final byte JOIN = 4;
+
+    private final Path directory;
+    private final int groupSize;
+    private final long maxDelayNanos;
+    private final int snapshotEvery;
+    private final FileChannel log;
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer pending = ByteBuffer.allocateDirect(1 << 16); //records not yet written
+    private int pendingWrites;
+    private long pendingSince; //System.nanoTime() of the oldest pending write
+    private int loggedWrites; //since the last snapshot
+    private long generation;
+    private AVLTree tree;
+    private IOException failure; //of the log, set once - writes are rejected afterwards
+
+    private DurableAVLTree(Path directory, int groupSize, int snapshotEvery, long maxDelayMicros, FileChannel log,
+                           long generation, AVLTree tree) {
+        this.directory = directory;
+        this.groupSize = groupSize;
+        this.maxDelayNanos = maxDelayMicros * 1000;
+        this.snapshotEvery = snapshotEvery;
+        this.log = log;
+        this.generation = generation;
+        this.tree = tree;
+    }
+
+    /**
+     * public static DurableAVLTree open(Path directory)
+     * As open(directory, 64, 2^20, 1000)
+     */
+    public static DurableAVLTree open(Path directory) throws IOException {
+        return open(directory, DEFAULT_GROUP_SIZE, DEFAULT_SNAPSHOT_EVERY);
+    }
+
+    /**
+     * public static DurableAVLTree open(Path directory, int groupSize, int snapshotEvery)
+     * As open(directory, groupSize, snapshotEvery, 1000)
+     */
+    public static DurableAVLTree open(Path directory, int groupSize, int snapshotEvery) throws IOException {
+        return open(directory, groupSize, snapshotEvery, DEFAULT_MAX_DELAY_MICROS);
+    }
+
+    /**
+     * public static DurableAVLTree open(Path directory, int groupSize, int snapshotEvery, long maxDelayMicros)
+     * Opens the tree kept in directory (creating it, empty, if there is none): loads the snapshot,
+     * replays the log on it, and truncates a torn record at the end of the log.
+     * @pre groupSize >= 1, snapshotEvery >= 1, maxDelayMicros >= 0
+     * Complexity: O(n + m log n) for n items in the snapshot and m writes in the log
+     */
+    public static DurableAVLTree open(Path directory, int groupSize, int snapshotEvery, long maxDelayMicros) throws IOException {
+        Files.createDirectories(directory);
+        long generation = 0;
+        AVLTree tree = new AVLTree();
+        Path snapshot = directory.resolve("snapshot");
+        if (Files.exists(snapshot)) {
+            try (FileChannel in = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(8);
+                while (header.hasRemaining())
+                    if (in.read(header) < 0)
+                        throw new IOException("truncated DurableAVLTree snapshot");
+                generation = header.flip().getLong();
+                tree = AVLTree.readFrom(in);
+            }
+        }
+        FileChannel log = FileChannel.open(directory.resolve("wal"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        DurableAVLTree durable = new DurableAVLTree(directory, groupSize, snapshotEvery, maxDelayMicros, log, generation, tree);
+        try {
+            forceDirectory(directory); //the entry of a new log
+            durable.recover();
+        } catch (IOException e) {
+            log.close();
+            throw e;
+        }
+        return durable;
+    }
+
+    /**
+     * Forces the entries of directory to disk - a created or renamed file is not durable until its directory is
+     */
+    private static void forceDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Replays the log if it belongs to the snapshot's generation, and truncates it after its last whole record -
+     * or starts a new log if it is empty or older (its writes are in the snapshot).
+     * Throws IOException if the log is newer than the snapshot - the snapshot its writes follow is lost,
+     * and replaying them on an older one would make a tree which never existed.
+     */
+    private void recover() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER);
+        readFully(header, 0);
+        header.flip();
+        if (header.limit() < LOG_HEADER || header.getInt() != MAGIC) {
+            resetLog();
+            return;
+        }
+        long logGeneration = header.getLong();
+        if (logGeneration > this.generation)
+            throw new IOException("DurableAVLTree log of generation " + logGeneration
+                    + " is newer than the snapshot of generation " + this.generation);
+        if (logGeneration < this.generation) {
+            resetLog();
+            return;
+        }
+        long end = LOG_HEADER; //after the last whole record
+        ByteBuffer lengths = ByteBuffer.allocate(8);
+        while (true) {
+            lengths.clear();
+            if (readFully(lengths, end) < 8)
+                break;
+            int length = lengths.flip().getInt();
+            int checksum = lengths.getInt();
+            if (length <= 0 || end + 8 + length > this.log.size())
+                break;
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, end + 8);
+            this.crc.reset();
+            this.crc.update(payload.array());
+            if ((int) this.crc.getValue() != checksum)
+                break;
+            replay(payload.flip());
+            this.loggedWrites++;
+            end += 8 + length;
+        }
+        this.log.truncate(end);
+        this.log.position(end);
+        this.log.force(true);
+    }
+
+    private int readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = this.log.read(buffer, position + buffer.position());
+            if (read < 0)
+                break;
+        }
+        return buffer.position();
+    }
+
+    private void replay(ByteBuffer payload) throws IOException {
+        byte op = payload.get();
+        int k = payload.getInt();
+        if (op == INSERT) {
+            this.tree.insert(k, getString(payload));
+        }
+        else if (op == DELETE) {
+            this.tree.delete(k);
+        }
+        else if (op == SPLIT) {
+            this.tree = this.tree.split(k)[0];
+        }
+        else if (op == JOIN) {
+            String info = getString(payload);
+            AVLTree t = AVLTree.readFrom(Channels.newChannel(
+                    new ByteArrayInputStream(payload.array(), payload.position(), payload.remaining())));
+            this.tree.join(new AVLTree.AVLNode(k, info), t);
+        }
+        else {
+            throw new IOException("unknown DurableAVLTree log record " + op);
+        }
+    }
+
+    private static String getString(ByteBuffer payload) {
+        int length = payload.getInt();
+        if (length < 0)
+            return null;
+        String value = new String(payload.array(), payload.position(), length, StandardCharsets.UTF_8);
+        payload.position(payload.position() + length);
+        return value;
+    }
+
+    /**
+     * Starts an empty log of the current generation
+     */
+    private void resetLog() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER);
+        header.putInt(MAGIC).putLong(this.generation).flip();
+        this.log.truncate(0);
+        while (header.hasRemaining())
+            this.log.write(header, header.position());
+        this.log.position(LOG_HEADER);
+        this.log.force(true);
+        this.loggedWrites = 0;
+    }
+
+    /**
+     * Appends a record of payload to the log buffer, and commits the group if it is full or its oldest write is
+     * maxDelayMicros old.
+     * Called before the write is applied to the tree - if it throws, the write is not applied, and the instance is failed.
+     */
+    private void append(byte[] payload) throws IOException {
+        append(payload, payload.length);
+    }
+
+    /**
+     * Appends a record of payload[0..length) - a record larger than the buffer is streamed through it,
+     * written in buffer-sized pieces, so the buffer never grows.
+     */
+    private void append(byte[] payload, int length) throws IOException {
+        checkNotFailed();
+        try {
+            if (this.pending.remaining() < 8 + length)
+                writePending();
+            this.crc.reset();
+            this.crc.update(payload, 0, length);
+            this.pending.putInt(length).putInt((int) this.crc.getValue());
+            for (int offset = 0; offset < length; ) {
+                if (!this.pending.hasRemaining())
+                    writePending();
+                int n = Math.min(this.pending.remaining(), length - offset);
+                this.pending.put(payload, offset, n);
+                offset += n;
+            }
+            this.loggedWrites++;
+            long now = System.nanoTime();
+            if (this.pendingWrites++ == 0)
+                this.pendingSince = now;
+            if (this.pendingWrites >= this.groupSize || now - this.pendingSince >= this.maxDelayNanos)
+                sync();
+        } catch (IOException e) {
+            this.failure = e;
+            throw e;
+        }
+    }
+
+    /**
+     * Called after a logged write is applied to the tree - checkpoints once snapshotEvery writes are logged
+     */
+    private void applied() throws IOException {
+        if (this.loggedWrites >= this.snapshotEvery)
+            checkpoint();
+    }
+
+    private void checkNotFailed() throws IOException {
+        if (this.failure != null)
+            throw new IOException("DurableAVLTree failed on an earlier log write - open it again", this.failure);
+    }
+
+    private void writePending() throws IOException {
+        this.pending.flip();
+        while (this.pending.hasRemaining())
+            this.log.write(this.pending);
+        this.pending.clear();
+    }
+
+    private static byte[] record(byte op, int k, String i, boolean withInfo) {
+        byte[] info = i == null ? null : i.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(5 + (withInfo ? 4 + (info == null ? 0 : info.length) : 0));
+        payload.put(op).putInt(k);
+        if (withInfo) {
+            payload.putInt(info == null ? -1 : info.length);
+            if (info != null)
+                payload.put(info);
+        }
+        return payload.array();
+    }
+
+    /**
+     * public void sync()
+     * Writes the pending group of writes to the log and forces it to disk - every write so far is durable afterwards.
+     * Complexity: one write and one fsync, shared by the group
+     */
+    public void sync() throws IOException {
+        checkNotFailed();
+        if (this.pendingWrites == 0)
+            return;
+        try {
+            writePending();
+            this.log.force(true); //true - the log's length changed as well
+        } catch (IOException e) {
+            this.failure = e;
+            throw e;
+        }
+        this.pendingWrites = 0;
+    }
+
+    /**
+     * public void checkpoint()
+     * Writes a snapshot of the tree and truncates the log - open() then loads the snapshot and replays nothing.
+     * The snapshot is written to a temporary file and renamed over the old one, so a crash leaves either one.
+     * Complexity: O(n)
+     */
+    public void checkpoint() throws IOException {
+        sync();
+        try {
+            Path temporary = this.directory.resolve("snapshot.tmp");
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(8);
+                header.putLong(this.generation + 1).flip();
+                while (header.hasRemaining())
+                    out.write(header);
+                this.tree.writeTo(out);
+                out.force(true);
+            }
+            Files.move(temporary, this.directory.resolve("snapshot"), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            forceDirectory(this.directory); //the rename must be durable before the log of the new generation is
+            this.generation++;
+            resetLog();
+        } catch (IOException e) {
+            this.failure = e;
+            throw e;
+        }
+    }
+
+    /**
+     * public void close()
+     * Syncs the pending writes and closes the log (a failed instance is closed without syncing).
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (this.failure == null)
+                sync();
+        } finally {
+            this.log.close();
+        }
+    }
+
+    /**
+     * public int insert(int k, String i)
+     * inserts an item with key k and info i, returns as AVLTree.insert() - logging it first, if k is not in the tree
+     * Complexity: O(log n), and an amortized share of a group's fsync
+     */
+    public int insert(int k, String i) throws IOException {
+        if (contains(k))
+            return -1;
+        append(record(INSERT, k, i, true));
+        int result = this.tree.insert(k, i);
+        applied();
+        return result;
+    }
+
+    /**
+     * Complexity: O(log n) - a cursor rather than search(), as an item's info may be null
+     */
+    private boolean contains(int k) {
+        return this.tree.cursor(k, k).isValid();
+    }
+
+    /**
+     * public int delete(int k)
+     * deletes an item with key k if it is there, returns as AVLTree.delete() - logging it first, if k is in the tree
+     * Complexity: O(log n), and an amortized share of a group's fsync
+     */
+    public int delete(int k) throws IOException {
+        if (!contains(k))
+            return -1;
+        append(record(DELETE, k, null, false));
+        int result = this.tree.delete(k);
+        applied();
+        return result;
+    }
+
+    /**
+     * public AVLTree split(int x)
+     * splits the tree by x, as AVLTree.split(): this tree keeps the items with keys < x,
+     * and the items with keys > x are returned, as an AVLTree which is not durable.
+     * precondition: search(x) != null
+     * Complexity: O(log n)
+     */
+    public AVLTree split(int x) throws IOException {
+        append(record(SPLIT, x, null, false));
+        AVLTree[] parts = this.tree.split(x);
+        this.tree = parts[0];
+        applied();
+        return parts[1];
+    }
+
+    /**
+     * public void join(int k, String i, AVLTree t)
+     * joins the item (k, i) and t with the tree, as AVLTree.join(). The log record holds the items of t,
+     * as an AVLTree.writeTo() snapshot, encoded once into a heap array and streamed through the log buffer.
+     * precondition: keys(k,t) < keys() or keys(k,t) > keys()
+     * postcondition: t is not usable afterwards
+     * Complexity: O(|t| + log n) - t is written to the log
+     */
+    public void join(int k, String i, AVLTree t) throws IOException {
+        Payload payload = new Payload();
+        payload.write(record(JOIN, k, i, true));
+        t.writeTo(Channels.newChannel(payload));
+        append(payload.array(), payload.size());
+        this.tree.join(new AVLTree.AVLNode(k, i), t);
+        applied();
+    }
+
+    /**
+     * A growing payload, whose array is appended as it is - without the copy of toByteArray()
+     */
+    private static final class Payload extends ByteArrayOutputStream {
+        byte[] array() {
+            return this.buf;
+        }
+    }
+
+    /**
+     * public String search(int k)
+     * Complexity: O(log n)
+     */
+    public String search(int k) {
+        return this.tree.search(k);
+    }
+
+    /**
+     * public boolean empty()
+     * Complexity: O(1)
+     */
+    public boolean empty() {
+        return this.tree.empty();
+    }
+
+    /**
+     * public int size()
+     * Complexity: O(1)
+     */
+    public int size() {
+        return this.tree.size();
+    }
+
+    /**
+     * public String min()
+     * Complexity: O(1)
+     */
+    public String min() {
+        return this.tree.min();
+    }
+
+    /**
+     * public String max()
+     * Complexity: O(1)
+     */
+    public String max() {
+        return this.tree.max();
+    }
+
+    /**
+     * public void forEachInRange(int lo, int hi, AVLTree.RangeConsumer consumer)
+     * Complexity: O(log n + k) for k items in range
+     */
+    public void forEachInRange(int lo, int hi, AVLTree.RangeConsumer consumer) {
+        this.tree.forEachInRange(lo, hi, consumer);
+    }
+
+    /**
+     * public int[] keysToArray()
+     * Complexity: O(n)
+     */
+    public int[] keysToArray() {
+        return this.tree.keysToArray();
+    }
+
+    /**
+     * public String[] infoToArray()
+     * Complexity: O(n)
+     */
+    public String[] infoToArray() {
+        return this.tree.infoToArray();
+    }
+}
@@ -0,0 +1,435 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * GenericAVLTree
+ * An AVL Tree with distinct keys of any type K, ordered by a Comparator, and values of any type V.
+ * IntAVLTree and LongAVLTree are hand-specialized copies for int and long keys, which compare keys
+ * directly - no boxing, and no call through a Comparator which may have many implementations.
+ *
+ * Nodes keep their height and subtree size, and have no parent pointers - insert() and delete()
+ * recurse down the search path and rebalance on the way back up, with single and double rotations.
+ */
+
+public class GenericAVLTree<K, V> {
+
+    private final Comparator<? super K> comparator;
+    private Node<K, V> root; //null if the tree is empty
+    private boolean changed; //set by the recursive insert and delete, if they changed the tree
+
+    /**
+     * GenericAVLTree Constructor - an empty tree, with keys ordered by comparator
+     * Complexity: O(1)
+     */
+    public GenericAVLTree(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * public static GenericAVLTree<K, V> naturalOrder()
+     * Returns an empty tree, with keys in their natural order
+     * Complexity: O(1)
+     */
+    public static <K extends Comparable<? super K>, V> GenericAVLTree<K, V> naturalOrder() {
+        return new GenericAVLTree<>(Comparator.<K>naturalOrder());
+    }
+
+    private GenericAVLTree(Comparator<? super K> comparator, Node<K, V> root) {
+        this.comparator = comparator;
+        this.root = root;
+    }
+
+    /**
+     * public boolean empty()
+     * Complexity: O(1)
+     */
+    public boolean empty() {
+        return this.root == null;
+    }
+
+    /**
+     * public int size()
+     * Complexity: O(1)
+     */
+    public int size() {
+        return size(this.root);
+    }
+
+    /**
+     * public V search(K k)
+     * returns the value of the item with key k if it exists in the tree
+     * otherwise, returns null
+     * Complexity: O(log n)
+     */
+    public V search(K k) {
+        Node<K, V> node = this.root;
+        while (node != null) {
+            int c = this.comparator.compare(k, node.key);
+            if (c == 0)
+                return node.value;
+            node = c < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * public int insert(K k, V v)
+     * inserts an item with key k and value v to the tree.
+     * returns -1 if an item with key k already exists in the tree, 0 otherwise (rebalancing is not counted).
+     * Complexity: O(log n)
+     */
+    public int insert(K k, V v) {
+        this.changed = false;
+        this.root = insert(this.root, k, v);
+        return this.changed ? 0 : -1;
+    }
+
+    private Node<K, V> insert(Node<K, V> node, K k, V v) {
+        if (node == null) {
+            this.changed = true;
+            return new Node<>(k, v);
+        }
+        int c = this.comparator.compare(k, node.key);
+        if (c == 0)
+            return node;
+        if (c < 0)
+            node.left = insert(node.left, k, v);
+        else
+            node.right = insert(node.right, k, v);
+        return this.changed ? balance(node) : node;
+    }
+
+    /**
+     * public int delete(K k)
+     * deletes the item with key k from the tree, if it is there.
+     * returns -1 if an item with key k was not found in the tree, 0 otherwise.
+     * Complexity: O(log n)
+     */
+    public int delete(K k) {
+        this.changed = false;
+        this.root = delete(this.root, k);
+        return this.changed ? 0 : -1;
+    }
+
+    private Node<K, V> delete(Node<K, V> node, K k) {
+        if (node == null)
+            return null;
+        int c = this.comparator.compare(k, node.key);
+        if (c < 0) {
+            node.left = delete(node.left, k);
+        }
+        else if (c > 0) {
+            node.right = delete(node.right, k);
+        }
+        else {
+            this.changed = true;
+            if (node.left == null)
+                return node.right;
+            if (node.right == null)
+                return node.left;
+            //binary - the successor takes node's place
+            Node<K, V> successor = node.right;
+            while (successor.left != null)
+                successor = successor.left;
+            successor.right = deleteMin(node.right);
+            successor.left = node.left;
+            node = successor;
+        }
+        return this.changed ? balance(node) : node;
+    }
+
+    private static <K, V> Node<K, V> deleteMin(Node<K, V> node) {
+        if (node.left == null)
+            return node.right;
+        node.left = deleteMin(node.left);
+        return balance(node);
+    }
+
+    /**
+     * public V min()
+     * Returns the value of the item with the smallest key in the tree, or null if the tree is empty
+     * Complexity: O(log n)
+     */
+    public V min() {
+        Node<K, V> node = this.root;
+        if (node == null)
+            return null;
+        while (node.left != null)
+            node = node.left;
+        return node.value;
+    }
+
+    /**
+     * public V max()
+     * Returns the value of the item with the largest key in the tree, or null if the tree is empty
+     * Complexity: O(log n)
+     */
+    public V max() {
+        Node<K, V> node = this.root;
+        if (node == null)
+            return null;
+        while (node.right != null)
+            node = node.right;
+        return node.value;
+    }
+
+    /**
+     * public K select(int i)
+     * Returns the key of rank i - the i-th smallest key, counting from 0.
+     * precondition: 0 <= i < size()
+     * Complexity: O(log n)
+     */
+    public K select(int i) {
+        Node<K, V> node = this.root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (i < leftSize) {
+                node = node.left;
+            }
+            else if (i == leftSize) {
+                return node.key;
+            }
+            else {
+                i -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * public int rank(K k)
+     * Returns the number of keys in the tree which are smaller than k (k doesn't have to be in the tree).
+     * Complexity: O(log n)
+     */
+    public int rank(K k) {
+        int rank = 0;
+        Node<K, V> node = this.root;
+        while (node != null) {
+            if (this.comparator.compare(node.key, k) < 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+            else {
+                node = node.left;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * public void forEachInRange(K lo, K hi, BiConsumer<? super K, ? super V> consumer)
+     * Passes every item with lo <= key <= hi to consumer, in key order (a null lo or hi is unbounded) - an in-order walk
+     * with an explicit stack of the path, as nodes have no parent pointers.
+     * Complexity: O(log n + k) for k items in range
+     */
+    public void forEachInRange(K lo, K hi, BiConsumer<? super K, ? super V> consumer) {
+        @SuppressWarnings("unchecked")
+        Node<K, V>[] stack = (Node<K, V>[]) new Node<?, ?>[height(this.root) + 2];
+        int top = 0;
+        Node<K, V> node = this.root;
+        while (true) {
+            //go down to the smallest key >= lo, keeping the nodes still to be visited
+            while (node != null) {
+                if (lo != null && this.comparator.compare(node.key, lo) < 0) {
+                    node = node.right;
+                }
+                else {
+                    stack[top++] = node;
+                    node = node.left;
+                }
+            }
+            if (top == 0)
+                return;
+            node = stack[--top];
+            if (hi != null && this.comparator.compare(node.key, hi) > 0)
+                return;
+            consumer.accept(node.key, node.value);
+            node = node.right;
+        }
+    }
+
+    /**
+     * public List<K> keys()
+     * Returns a sorted list of all keys in the tree.
+     * Complexity: O(n)
+     */
+    public List<K> keys() {
+        List<K> list = new ArrayList<>(size());
+        forEachInRange(null, null, (key, value) -> list.add(key));
+        return list;
+    }
+
+    /**
+     * public List<V> values()
+     * Returns a list of all values in the tree, sorted by their respective keys.
+     * Complexity: O(n)
+     */
+    public List<V> values() {
+        List<V> list = new ArrayList<>(size());
+        forEachInRange(null, null, (key, value) -> list.add(value));
+        return list;
+    }
+
+    /**
+     * public GenericAVLTree<K, V>[] split(K x)
+     * Returns an array [t1, t2] with two trees, keys(t1) < x < keys(t2) - the item with key x, if any, is in neither.
+     * postcondition: this tree is empty
+     * Complexity: O(log n) - the path to x is cut, and the subtrees hanging off it are joined on each side
+     */
+    public GenericAVLTree<K, V>[] split(K x) {
+        Node<K, V>[] parts = split(this.root, x);
+        this.root = null;
+        @SuppressWarnings("unchecked")
+        GenericAVLTree<K, V>[] trees = (GenericAVLTree<K, V>[]) new GenericAVLTree<?, ?>[]{new GenericAVLTree<>(this.comparator, parts[0]), new GenericAVLTree<>(this.comparator, parts[1])};
+        return trees;
+    }
+
+    private Node<K, V>[] split(Node<K, V> node, K x) {
+        if (node == null) {
+            @SuppressWarnings("unchecked")
+            Node<K, V>[] parts = (Node<K, V>[]) new Node<?, ?>[2];
+            return parts;
+        }
+        Node<K, V> left = node.left;
+        Node<K, V> right = node.right;
+        int c = this.comparator.compare(x, node.key);
+        if (c < 0) {
+            Node<K, V>[] parts = split(left, x);
+            parts[1] = join(parts[1], node, right);
+            return parts;
+        }
+        if (c > 0) {
+            Node<K, V>[] parts = split(right, x);
+            parts[0] = join(left, node, parts[0]);
+            return parts;
+        }
+        @SuppressWarnings("unchecked")
+        Node<K, V>[] parts = (Node<K, V>[]) new Node<?, ?>[]{left, right};
+        return parts;
+    }
+
+    /**
+     * public void join(K k, V v, GenericAVLTree<K, V> t)
+     * joins t and the item (k, v) with the tree.
+     * precondition: keys(k,t) < keys() or keys(k,t) > keys(). t/tree might be empty.
+     * postcondition: t is empty
+     * Complexity: O(|tree.height - t.height| + 1) - down the side of the higher tree to the other one's height
+     */
+    public void join(K k, V v, GenericAVLTree<K, V> t) {
+        boolean tIsBigger = t.root != null ? this.comparator.compare(t.root.key, k) > 0
+                : this.root == null || this.comparator.compare(this.root.key, k) < 0;
+        Node<K, V> middle = new Node<>(k, v);
+        this.root = tIsBigger ? join(this.root, middle, t.root) : join(t.root, middle, this.root);
+        t.root = null;
+    }
+
+    /**
+     * @pre keys(left) < middle.key < keys(right)
+     * @return a balanced tree of left, middle and right
+     */
+    private static <K, V> Node<K, V> join(Node<K, V> left, Node<K, V> middle, Node<K, V> right) {
+        if (height(left) > height(right) + 1) {
+            left.right = join(left.right, middle, right);
+            return balance(left);
+        }
+        if (height(right) > height(left) + 1) {
+            right.left = join(left, middle, right.left);
+            return balance(right);
+        }
+        middle.left = left;
+        middle.right = right;
+        return update(middle);
+    }
+
+    /**
+     * Checks the invariants of every node - keys in order, children heights differing by at most 1,
+     * and the stored height and size. Used by the tests.
+     * Complexity: O(n)
+     */
+    boolean isValidAVL() {
+        return isValidAVL(this.root, null, null);
+    }
+
+    private boolean isValidAVL(Node<K, V> node, Node<K, V> lo, Node<K, V> hi) {
+        if (node == null)
+            return true;
+        return (lo == null || this.comparator.compare(lo.key, node.key) < 0)
+                && (hi == null || this.comparator.compare(node.key, hi.key) < 0)
+                && Math.abs(height(node.left) - height(node.right)) <= 1
+                && node.height == Math.max(height(node.left), height(node.right)) + 1
+                && node.size == size(node.left) + size(node.right) + 1
+                && isValidAVL(node.left, lo, node) && isValidAVL(node.right, node, hi);
+    }
+
+    private static int height(Node<?, ?> node) {
+        return node == null ? -1 : node.height;
+    }
+
+    private static int size(Node<?, ?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Sets node's height and size from its children
+     * @return node
+     */
+    private static <K, V> Node<K, V> update(Node<K, V> node) {
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        node.size = size(node.left) + size(node.right) + 1;
+        return node;
+    }
+
+    /**
+     * @pre node's children are AVL trees whose heights differ by at most 2
+     * @return the root of node's subtree, balanced - with a single or a double rotation if needed
+     * Complexity: O(1)
+     */
+    private static <K, V> Node<K, V> balance(Node<K, V> node) {
+        update(node);
+        if (height(node.left) > height(node.right) + 1) {
+            if (height(node.left.left) < height(node.left.right)) //double rotation - left, then right
+                node.left = rotateLeft(node.left);
+            return rotateRight(node);
+        }
+        if (height(node.right) > height(node.left) + 1) {
+            if (height(node.right.right) < height(node.right.left)) //double rotation - right, then left
+                node.right = rotateRight(node.right);
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static <K, V> Node<K, V> rotateRight(Node<K, V> node) {
+        Node<K, V> left = node.left;
+        node.left = left.right;
+        left.right = update(node);
+        return update(left);
+    }
+
+    private static <K, V> Node<K, V> rotateLeft(Node<K, V> node) {
+        Node<K, V> right = node.right;
+        node.right = right.left;
+        right.left = update(node);
+        return update(right);
+    }
+
+    /**
+     * class Node
+     * A node - key, value, children, and the height (rank) and size of its subtree.
+     */
+    private static final class Node<K, V> {
+        private final K key;
+        private final V value;
+        private Node<K, V> left;
+        private Node<K, V> right;
+        private int height;
+        private int size = 1;
+
+        private Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * LockFreeAVLTree
+ * A thread-safe AVL Tree with
+ * distinct integer keys and info, for read-mostly use.
+ *
+ * The tree is a reference to the current PersistentAVLTree version.
+ * Readers take the version and read it without any lock - a version never changes, so every read
+ * (including a whole range scan) sees one consistent tree, and readers never wait for writers or retry.
+ * Writers are optimistic: a write builds the next version from the one it read (O(log n) new nodes)
+ * and publishes it with a compare-and-set, which fails - and the write is redone from the newer
+ * version - only if another write was published meanwhile.
+ * Every operation is linearizable, at the read of the version (reads) or at the successful compare-and-set (writes).
+ */
+
+public class LockFreeAVLTree {
+
+    private final AtomicReference<PersistentAVLTree> version;
+
+    /**
+     * LockFreeAVLTree Constructor - an empty tree
+     * Complexity: O(1)
+     */
+    public LockFreeAVLTree() {
+        this.version = new AtomicReference<>(new PersistentAVLTree());
+    }
+
+    /**
+     * public PersistentAVLTree snapshot()
+     * Returns the current version of the tree, which later writes do not change.
+     * Complexity: O(1)
+     */
+    public PersistentAVLTree snapshot() {
+        return this.version.get();
+    }
+
+    /**
+     * public boolean empty()
+     * Complexity: O(1)
+     */
+    public boolean empty() {
+        return snapshot().empty();
+    }
+
+    /**
+     * public String search(int k)
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns null
+     * Complexity: O(log n), no locking
+     */
+    public String search(int k) {
+        return snapshot().search(k);
+    }
+
+    /**
+     * public String min()
+     * Complexity: O(log n), no locking
+     */
+    public String min() {
+        return snapshot().min();
+    }
+
+    /**
+     * public String max()
+     * Complexity: O(log n), no locking
+     */
+    public String max() {
+        return snapshot().max();
+    }
+
+    /**
+     * public int size()
+     * Complexity: O(1), no locking
+     */
+    public int size() {
+        return snapshot().size();
+    }
+
+    /**
+     * public void forEachInRange(int lo, int hi, AVLTree.RangeConsumer consumer)
+     * Passes every item with lo <= key <= hi of the current version to consumer, in key order.
+     * Writes during the scan are not seen by it.
+     * Complexity: O(log n + k) for k items in range, no locking
+     */
+    public void forEachInRange(int lo, int hi, AVLTree.RangeConsumer consumer) {
+        snapshot().forEachInRange(lo, hi, consumer);
+    }
+
+    /**
+     * public int[] keysToArray()
+     * Complexity: O(n), no locking
+     */
+    public int[] keysToArray() {
+        return snapshot().keysToArray();
+    }
+
+    /**
+     * public String[] infoToArray()
+     * Complexity: O(n), no locking
+     */
+    public String[] infoToArray() {
+        return snapshot().infoToArray();
+    }
+
+    /**
+     * public int insert(int k, String i)
+     * inserts an item with key k and info i to the tree.
+     * returns -1 if an item with key k already exists in the tree, 0 otherwise
+     * (rebalancing is done while copying the path, and is not counted).
+     * Complexity: O(log n) per attempt - an attempt is redone only if another write was published during it
+     */
+    public int insert(int k, String i) {
+        while (true) {
+            PersistentAVLTree current = this.version.get();
+            PersistentAVLTree next = current.insert(k, i);
+            if (next == current) //k is in tree
+                return -1;
+            if (this.version.compareAndSet(current, next))
+                return 0;
+        }
+    }
+
+    /**
+     * public int delete(int k)
+     * deletes an item with key k from the tree, if it is there.
+     * returns -1 if an item with key k was not found in the tree, 0 otherwise.
+     * Complexity: O(log n) per attempt, as insert()
+     */
+    public int delete(int k) {
+        while (true) {
+            PersistentAVLTree current = this.version.get();
+            PersistentAVLTree next = current.delete(k);
+            if (next == current) //k is not in tree
+                return -1;
+            if (this.version.compareAndSet(current, next))
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,422 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LongAVLTree
+ * An AVL Tree with distinct long keys and values of any type V - the long-keyed specialization of
+ * GenericAVLTree, as IntAVLTree is for int keys, so that keys are never boxed and compared with a Comparator.
+ *
+ * Nodes keep their height and subtree size, and have no parent pointers - insert() and delete()
+ * recurse down the search path and rebalance on the way back up, with single and double rotations.
+ */
+
+public class LongAVLTree<V> {
+
+    private Node<V> root; //null if the tree is empty
+    private boolean changed; //set by the recursive insert and delete, if they changed the tree
+
+    /**
+     * A consumer of items, used by forEachInRange()
+     */
+    public interface RangeConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    /**
+     * LongAVLTree Constructor - an empty tree
+     * Complexity: O(1)
+     */
+    public LongAVLTree() {
+    }
+
+    private LongAVLTree(Node<V> root) {
+        this.root = root;
+    }
+
+    /**
+     * public boolean empty()
+     * Complexity: O(1)
+     */
+    public boolean empty() {
+        return this.root == null;
+    }
+
+    /**
+     * public int size()
+     * Complexity: O(1)
+     */
+    public int size() {
+        return size(this.root);
+    }
+
+    /**
+     * public V search(long k)
+     * returns the value of the item with key k if it exists in the tree
+     * otherwise, returns null
+     * Complexity: O(log n)
+     */
+    public V search(long k) {
+        Node<V> node = this.root;
+        while (node != null) {
+            if (k == node.key)
+                return node.value;
+            node = k < node.key ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * public int insert(long k, V v)
+     * inserts an item with key k and value v to the tree.
+     * returns -1 if an item with key k already exists in the tree, 0 otherwise (rebalancing is not counted).
+     * Complexity: O(log n)
+     */
+    public int insert(long k, V v) {
+        this.changed = false;
+        this.root = insert(this.root, k, v);
+        return this.changed ? 0 : -1;
+    }
+
+    private Node<V> insert(Node<V> node, long k, V v) {
+        if (node == null) {
+            this.changed = true;
+            return new Node<>(k, v);
+        }
+        if (k == node.key)
+            return node;
+        if (k < node.key)
+            node.left = insert(node.left, k, v);
+        else
+            node.right = insert(node.right, k, v);
+        return this.changed ? balance(node) : node;
+    }
+
+    /**
+     * public int delete(long k)
+     * deletes the item with key k from the tree, if it is there.
+     * returns -1 if an item with key k was not found in the tree, 0 otherwise.
+     * Complexity: O(log n)
+     */
+    public int delete(long k) {
+        this.changed = false;
+        this.root = delete(this.root, k);
+        return this.changed ? 0 : -1;
+    }
+
+    private Node<V> delete(Node<V> node, long k) {
+        if (node == null)
+            return null;
+        if (k < node.key) {
+            node.left = delete(node.left, k);
+        }
+        else if (k > node.key) {
+            node.right = delete(node.right, k);
+        }
+        else {
+            this.changed = true;
+            if (node.left == null)
+                return node.right;
+            if (node.right == null)
+                return node.left;
+            //binary - the successor takes node's place
+            Node<V> successor = node.right;
+            while (successor.left != null)
+                successor = successor.left;
+            successor.right = deleteMin(node.right);
+            successor.left = node.left;
+            node = successor;
+        }
+        return this.changed ? balance(node) : node;
+    }
+
+    private static <V> Node<V> deleteMin(Node<V> node) {
+        if (node.left == null)
+            return node.right;
+        node.left = deleteMin(node.left);
+        return balance(node);
+    }
+
+    /**
+     * public V min()
+     * Returns the value of the item with the smallest key in the tree, or null if the tree is empty
+     * Complexity: O(log n)
+     */
+    public V min() {
+        Node<V> node = this.root;
+        if (node == null)
+            return null;
+        while (node.left != null)
+            node = node.left;
+        return node.value;
+    }
+
+    /**
+     * public V max()
+     * Returns the value of the item with the largest key in the tree, or null if the tree is empty
+     * Complexity: O(log n)
+     */
+    public V max() {
+        Node<V> node = this.root;
+        if (node == null)
+            return null;
+        while (node.right != null)
+            node = node.right;
+        return node.value;
+    }
+
+    /**
+     * public long select(int i)
+     * Returns the key of rank i - the i-th smallest key, counting from 0.
+     * precondition: 0 <= i < size()
+     * Complexity: O(log n)
+     */
+    public long select(int i) {
+        Node<V> node = this.root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (i < leftSize) {
+                node = node.left;
+            }
+            else if (i == leftSize) {
+                return node.key;
+            }
+            else {
+                i -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * public int rank(long k)
+     * Returns the number of keys in the tree which are smaller than k (k doesn't have to be in the tree).
+     * Complexity: O(log n)
+     */
+    public int rank(long k) {
+        int rank = 0;
+        Node<V> node = this.root;
+        while (node != null) {
+            if (node.key < k) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+            else {
+                node = node.left;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * public void forEachInRange(long lo, long hi, RangeConsumer<? super V> consumer)
+     * Passes every item with lo <= key <= hi to consumer, in key order - an in-order walk
+     * with an explicit stack of the path, as nodes have no parent pointers.
+     * Complexity: O(log n + k) for k items in range
+     */
+    public void forEachInRange(long lo, long hi, RangeConsumer<? super V> consumer) {
+        @SuppressWarnings("unchecked")
+        Node<V>[] stack = (Node<V>[]) new Node<?>[height(this.root) + 2];
+        int top = 0;
+        Node<V> node = this.root;
+        while (true) {
+            //go down to the smallest key >= lo, keeping the nodes still to be visited
+            while (node != null) {
+                if (node.key < lo) {
+                    node = node.right;
+                }
+                else {
+                    stack[top++] = node;
+                    node = node.left;
+                }
+            }
+            if (top == 0)
+                return;
+            node = stack[--top];
+            if (node.key > hi)
+                return;
+            consumer.accept(node.key, node.value);
+            node = node.right;
+        }
+    }
+
+    /**
+     * public long[] keysToArray()
+     * Returns a sorted array which contains all keys in the tree.
+     * Complexity: O(n)
+     */
+    public long[] keysToArray() {
+        long[] arr = new long[size()];
+        int[] i = new int[1];
+        forEachInRange(Long.MIN_VALUE, Long.MAX_VALUE, (key, value) -> arr[i[0]++] = key);
+        return arr;
+    }
+
+    /**
+     * public List<V> values()
+     * Returns a list of all values in the tree, sorted by their respective keys.
+     * Complexity: O(n)
+     */
+    public List<V> values() {
+        List<V> list = new ArrayList<>(size());
+        forEachInRange(Long.MIN_VALUE, Long.MAX_VALUE, (key, value) -> list.add(value));
+        return list;
+    }
+
+    /**
+     * public LongAVLTree<V>[] split(long x)
+     * Returns an array [t1, t2] with two trees, keys(t1) < x < keys(t2) - the item with key x, if any, is in neither.
+     * postcondition: this tree is empty
+     * Complexity: O(log n) - the path to x is cut, and the subtrees hanging off it are joined on each side
+     */
+    public LongAVLTree<V>[] split(long x) {
+        Node<V>[] parts = split(this.root, x);
+        this.root = null;
+        @SuppressWarnings("unchecked")
+        LongAVLTree<V>[] trees = (LongAVLTree<V>[]) new LongAVLTree<?>[]{new LongAVLTree<>(parts[0]), new LongAVLTree<>(parts[1])};
+        return trees;
+    }
+
+    private static <V> Node<V>[] split(Node<V> node, long x) {
+        if (node == null) {
+            @SuppressWarnings("unchecked")
+            Node<V>[] parts = (Node<V>[]) new Node<?>[2];
+            return parts;
+        }
+        Node<V> left = node.left;
+        Node<V> right = node.right;
+        if (x < node.key) {
+            Node<V>[] parts = split(left, x);
+            parts[1] = join(parts[1], node, right);
+            return parts;
+        }
+        if (x > node.key) {
+            Node<V>[] parts = split(right, x);
+            parts[0] = join(left, node, parts[0]);
+            return parts;
+        }
+        @SuppressWarnings("unchecked")
+        Node<V>[] parts = (Node<V>[]) new Node<?>[]{left, right};
+        return parts;
+    }
+
+    /**
+     * public void join(long k, V v, LongAVLTree<V> t)
+     * joins t and the item (k, v) with the tree.
+     * precondition: keys(k,t) < keys() or keys(k,t) > keys(). t/tree might be empty.
+     * postcondition: t is empty
+     * Complexity: O(|tree.height - t.height| + 1) - down the side of the higher tree to the other one's height
+     */
+    public void join(long k, V v, LongAVLTree<V> t) {
+        boolean tIsBigger = t.root != null ? t.root.key > k : this.root == null || this.root.key < k;
+        Node<V> middle = new Node<>(k, v);
+        this.root = tIsBigger ? join(this.root, middle, t.root) : join(t.root, middle, this.root);
+        t.root = null;
+    }
+
+    /**
+     * @pre keys(left) < middle.key < keys(right)
+     * @return a balanced tree of left, middle and right
+     */
+    private static <V> Node<V> join(Node<V> left, Node<V> middle, Node<V> right) {
+        if (height(left) > height(right) + 1) {
+            left.right = join(left.right, middle, right);
+            return balance(left);
+        }
+        if (height(right) > height(left) + 1) {
+            right.left = join(left, middle, right.left);
+            return balance(right);
+        }
+        middle.left = left;
+        middle.right = right;
+        return update(middle);
+    }
+
+    /**
+     * Checks the invariants of every node - keys in order, children heights differing by at most 1,
+     * and the stored height and size. Used by the tests.
+     * Complexity: O(n)
+     */
+    boolean isValidAVL() {
+        return isValidAVL(this.root, null, null);
+    }
+
+    private static boolean isValidAVL(Node<?> node, Node<?> lo, Node<?> hi) {
+        if (node == null)
+            return true;
+        return (lo == null || lo.key < node.key) && (hi == null || node.key < hi.key)
+                && Math.abs(height(node.left) - height(node.right)) <= 1
+                && node.height == Math.max(height(node.left), height(node.right)) + 1
+                && node.size == size(node.left) + size(node.right) + 1
+                && isValidAVL(node.left, lo, node) && isValidAVL(node.right, node, hi);
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? -1 : node.height;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Sets node's height and size from its children
+     * @return node
+     */
+    private static <V> Node<V> update(Node<V> node) {
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        node.size = size(node.left) + size(node.right) + 1;
+        return node;
+    }
+
+    /**
+     * @pre node's children are AVL trees whose heights differ by at most 2
+     * @return the root of node's subtree, balanced - with a single or a double rotation if needed
+     * Complexity: O(1)
+     */
+    private static <V> Node<V> balance(Node<V> node) {
+        update(node);
+        if (height(node.left) > height(node.right) + 1) {
+            if (height(node.left.left) < height(node.left.right)) //double rotation - left, then right
+                node.left = rotateLeft(node.left);
+            return rotateRight(node);
+        }
+        if (height(node.right) > height(node.left) + 1) {
+            if (height(node.right.right) < height(node.right.left)) //double rotation - right, then left
+                node.right = rotateRight(node.right);
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static <V> Node<V> rotateRight(Node<V> node) {
+        Node<V> left = node.left;
+        node.left = left.right;
+        left.right = update(node);
+        return update(left);
+    }
+
+    private static <V> Node<V> rotateLeft(Node<V> node) {
+        Node<V> right = node.right;
+        node.right = right.left;
+        right.left = update(node);
+        return update(right);
+    }
+
+    /**
+     * class Node
+     * A node - key, value, children, and the height (rank) and size of its subtree.
+     */
+    private static final class Node<V> {
+        private final long key;
+        private final V value;
+        private Node<V> left;
+        private Node<V> right;
+        private int height;
+        private int size = 1;
+
+        private Node(long key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
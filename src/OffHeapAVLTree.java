@@ -0,0 +1,408 @@
+import java.nio.ByteBuffer;
+
+/**
+ * OffHeapAVLTree
+ * An AVL Tree with distinct int keys and byte values, which are kept off the heap, in a ValueArena.
+ * A node holds only its value's reference and length - no String, char[] or byte[] per item -
+ * so the heap (and the work of the garbage collector) is the nodes alone.
+ *
+ * search() returns a read-only view of the value's bytes in the arena, not a copy.
+ * The arena is append-only, so a view keeps showing its value even after the item is deleted or
+ * the arena is compacted - it is a snapshot of the value, not a live reference to the item.
+ *
+ * Deleted values are reclaimed by compact(), which copies the live values to a new arena - done by delete()
+ * once most of the arena is garbage, so the arena is at most about twice the live values.
+ *
+ * The tree itself is as IntAVLTree: nodes keep their height and subtree size, and have no parent pointers.
+ */
+
+public class OffHeapAVLTree {
+
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private ValueArena arena;
+    private Node root; //null if the tree is empty
+    private boolean changed; //set by the recursive insert and delete, if they changed the tree
+
+    /**
+     * A consumer of items, used by forEachInRange() - value is a read-only view, as search() returns
+     */
+    public interface RangeConsumer {
+        void accept(int key, ByteBuffer value);
+    }
+
+    /**
+     * OffHeapAVLTree Constructor - an empty tree, with an arena of 1 MiB chunks
+     * Complexity: O(1)
+     */
+    public OffHeapAVLTree() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * OffHeapAVLTree Constructor - an empty tree, with an arena of chunkSize byte chunks
+     * (a value larger than a chunk gets a chunk of its own)
+     * @pre chunkSize >= 1
+     * Complexity: O(1)
+     */
+    public OffHeapAVLTree(int chunkSize) {
+        this.arena = new ValueArena(chunkSize);
+    }
+
+    /**
+     * public boolean empty()
+     * Complexity: O(1)
+     */
+    public boolean empty() {
+        return this.root == null;
+    }
+
+    /**
+     * public int size()
+     * Complexity: O(1)
+     */
+    public int size() {
+        return size(this.root);
+    }
+
+    /**
+     * public long offHeapBytes()
+     * Returns the bytes of values held in the arena, deleted ones (not yet compacted) included.
+     * Complexity: O(1)
+     */
+    public long offHeapBytes() {
+        return this.arena.allocatedBytes();
+    }
+
+    /**
+     * public ByteBuffer search(int k)
+     * returns a read-only view of the value of the item with key k if it exists in the tree
+     * otherwise, returns null
+     * Complexity: O(log n) - no bytes are copied
+     */
+    public ByteBuffer search(int k) {
+        Node node = this.root;
+        while (node != null) {
+            if (k == node.key)
+                return value(node);
+            node = k < node.key ? node.left : node.right;
+        }
+        return null;
+    }
+
+    private ByteBuffer value(Node node) {
+        return this.arena.get(node.ref, node.length);
+    }
+
+    /**
+     * public int insert(int k, byte[] value)
+     * As insert(k, ByteBuffer.wrap(value))
+     */
+    public int insert(int k, byte[] value) {
+        return insert(k, ByteBuffer.wrap(value));
+    }
+
+    /**
+     * public int insert(int k, ByteBuffer value)
+     * inserts an item with key k, and a copy of the remaining bytes of value (its position is left as it is).
+     * returns -1 if an item with key k already exists in the tree, 0 otherwise (rebalancing is not counted).
+     * Complexity: O(log n + length of value)
+     */
+    public int insert(int k, ByteBuffer value) {
+        this.changed = false;
+        this.root = insert(this.root, k, value);
+        return this.changed ? 0 : -1;
+    }
+
+    private Node insert(Node node, int k, ByteBuffer value) {
+        if (node == null) {
+            this.changed = true;
+            return new Node(k, this.arena.put(value), value.remaining());
+        }
+        if (k == node.key)
+            return node;
+        if (k < node.key)
+            node.left = insert(node.left, k, value);
+        else
+            node.right = insert(node.right, k, value);
+        return this.changed ? balance(node) : node;
+    }
+
+    /**
+     * public int delete(int k)
+     * deletes the item with key k from the tree, if it is there, and compacts the arena
+     * if less than half of it is live values.
+     * returns -1 if an item with key k was not found in the tree, 0 otherwise.
+     * Complexity: O(log n), amortized - a compaction copies the live values, after at least as many bytes were deleted
+     */
+    public int delete(int k) {
+        this.changed = false;
+        this.root = delete(this.root, k);
+        if (!this.changed)
+            return -1;
+        if (this.arena.allocatedBytes() > 2L * this.arena.chunkSize()
+                && this.arena.liveBytes() < this.arena.allocatedBytes() / 2)
+            compact();
+        return 0;
+    }
+
+    private Node delete(Node node, int k) {
+        if (node == null)
+            return null;
+        if (k < node.key) {
+            node.left = delete(node.left, k);
+        }
+        else if (k > node.key) {
+            node.right = delete(node.right, k);
+        }
+        else {
+            this.changed = true;
+            this.arena.free(node.length);
+            if (node.left == null)
+                return node.right;
+            if (node.right == null)
+                return node.left;
+            //binary - the successor takes node's place
+            Node successor = node.right;
+            while (successor.left != null)
+                successor = successor.left;
+            successor.right = deleteMin(node.right);
+            successor.left = node.left;
+            node = successor;
+        }
+        return this.changed ? balance(node) : node;
+    }
+
+    private static Node deleteMin(Node node) {
+        if (node.left == null)
+            return node.right;
+        node.left = deleteMin(node.left);
+        return balance(node);
+    }
+
+    /**
+     * public void compact()
+     * Copies the values of the tree to a new arena, in key order, and drops the old one -
+     * reclaiming the space of deleted values. Views returned before still show their values.
+     * Complexity: O(n + bytes of the values)
+     */
+    public void compact() {
+        ValueArena compacted = new ValueArena(this.arena.chunkSize());
+        compact(this.root, compacted);
+        this.arena = compacted;
+    }
+
+    private void compact(Node node, ValueArena compacted) {
+        if (node == null)
+            return;
+        compact(node.left, compacted);
+        node.ref = compacted.put(value(node));
+        compact(node.right, compacted);
+    }
+
+    /**
+     * public ByteBuffer min()
+     * Returns a view of the value of the item with the smallest key in the tree, or null if the tree is empty
+     * Complexity: O(log n)
+     */
+    public ByteBuffer min() {
+        Node node = this.root;
+        if (node == null)
+            return null;
+        while (node.left != null)
+            node = node.left;
+        return value(node);
+    }
+
+    /**
+     * public ByteBuffer max()
+     * Returns a view of the value of the item with the largest key in the tree, or null if the tree is empty
+     * Complexity: O(log n)
+     */
+    public ByteBuffer max() {
+        Node node = this.root;
+        if (node == null)
+            return null;
+        while (node.right != null)
+            node = node.right;
+        return value(node);
+    }
+
+    /**
+     * public int select(int i)
+     * Returns the key of rank i - the i-th smallest key, counting from 0.
+     * precondition: 0 <= i < size()
+     * Complexity: O(log n)
+     */
+    public int select(int i) {
+        Node node = this.root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (i < leftSize) {
+                node = node.left;
+            }
+            else if (i == leftSize) {
+                return node.key;
+            }
+            else {
+                i -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * public int rank(int k)
+     * Returns the number of keys in the tree which are smaller than k (k doesn't have to be in the tree).
+     * Complexity: O(log n)
+     */
+    public int rank(int k) {
+        int rank = 0;
+        Node node = this.root;
+        while (node != null) {
+            if (node.key < k) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+            else {
+                node = node.left;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * public void forEachInRange(int lo, int hi, RangeConsumer consumer)
+     * Passes every item with lo <= key <= hi to consumer, in key order - an in-order walk
+     * with an explicit stack of the path, as nodes have no parent pointers.
+     * Complexity: O(log n + k) for k items in range - no bytes are copied
+     */
+    public void forEachInRange(int lo, int hi, RangeConsumer consumer) {
+        Node[] stack = new Node[height(this.root) + 2];
+        int top = 0;
+        Node node = this.root;
+        while (true) {
+            //go down to the smallest key >= lo, keeping the nodes still to be visited
+            while (node != null) {
+                if (node.key < lo) {
+                    node = node.right;
+                }
+                else {
+                    stack[top++] = node;
+                    node = node.left;
+                }
+            }
+            if (top == 0)
+                return;
+            node = stack[--top];
+            if (node.key > hi)
+                return;
+            consumer.accept(node.key, value(node));
+            node = node.right;
+        }
+    }
+
+    /**
+     * public int[] keysToArray()
+     * Returns a sorted array which contains all keys in the tree.
+     * Complexity: O(n)
+     */
+    public int[] keysToArray() {
+        int[] arr = new int[size()];
+        int[] i = new int[1];
+        forEachInRange(Integer.MIN_VALUE, Integer.MAX_VALUE, (key, value) -> arr[i[0]++] = key);
+        return arr;
+    }
+
+    /**
+     * Checks the invariants of every node - keys in order, children heights differing by at most 1,
+     * and the stored height and size. Used by the tests.
+     * Complexity: O(n)
+     */
+    boolean isValidAVL() {
+        return isValidAVL(this.root, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    private static boolean isValidAVL(Node node, long lo, long hi) {
+        if (node == null)
+            return true;
+        return lo < node.key && node.key < hi
+                && Math.abs(height(node.left) - height(node.right)) <= 1
+                && node.height == Math.max(height(node.left), height(node.right)) + 1
+                && node.size == size(node.left) + size(node.right) + 1
+                && isValidAVL(node.left, lo, node.key) && isValidAVL(node.right, node.key, hi);
+    }
+
+    private static int height(Node node) {
+        return node == null ? -1 : node.height;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Sets node's height and size from its children
+     * @return node
+     */
+    private static Node update(Node node) {
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        node.size = size(node.left) + size(node.right) + 1;
+        return node;
+    }
+
+    /**
+     * @pre node's children are AVL trees whose heights differ by at most 2
+     * @return the root of node's subtree, balanced - with a single or a double rotation if needed
+     * Complexity: O(1)
+     */
+    private static Node balance(Node node) {
+        update(node);
+        if (height(node.left) > height(node.right) + 1) {
+            if (height(node.left.left) < height(node.left.right)) //double rotation - left, then right
+                node.left = rotateLeft(node.left);
+            return rotateRight(node);
+        }
+        if (height(node.right) > height(node.left) + 1) {
+            if (height(node.right.right) < height(node.right.left)) //double rotation - right, then left
+                node.right = rotateRight(node.right);
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = update(node);
+        return update(left);
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = update(node);
+        return update(right);
+    }
+
+    /**
+     * class Node
+     * A node - key, the reference and length of its value in the arena, children,
+     * and the height (rank) and size of its subtree.
+     */
+    private static final class Node {
+        private final int key;
+        private long ref; //changed by compact()
+        private final int length;
+        private Node left;
+        private Node right;
+        private int height;
+        private int size = 1;
+
+        private Node(int key, long ref, int length) {
+            this.key = key;
+            this.ref = ref;
+            this.length = length;
+        }
+    }
+}
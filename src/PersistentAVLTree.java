@@ -0,0 +1,363 @@
+/**
+ * PersistentAVLTree
+ * An implementation of a persistent AVL Tree with
+ * distinct integer keys and info.
+ *
+ * A tree is never changed - insert(), delete(), split() and join() return new trees,
+ * which share every node off the search path with the tree they were made from
+ * (path copying, O(log n) new nodes per operation). Any tree can therefore be read by
+ * any number of threads while a writer goes on making new versions from it.
+ *
+ * Nodes have no parent pointers (a node may be in many trees at once), so every
+ * operation is a descent from the root, and walks use an explicit stack.
+ */
+
+public class PersistentAVLTree {
+
+    private static final Node EMPTY = new Node(); //the virtual node, shared by all trees
+
+    private static final PersistentAVLTree EMPTY_TREE = new PersistentAVLTree(EMPTY);
+
+    private final Node root;
+
+    /**
+     * PersistentAVLTree Constructor - an empty tree
+     * Complexity: O(1)
+     */
+    public PersistentAVLTree() {
+        this(EMPTY);
+    }
+
+    private PersistentAVLTree(Node root) {
+        this.root = root;
+    }
+
+    private static PersistentAVLTree of(Node root) {
+        return root == EMPTY ? EMPTY_TREE : new PersistentAVLTree(root);
+    }
+
+    /**
+     * public boolean empty()
+     * returns true if and only if the tree is empty
+     * Complexity: O(1)
+     */
+    public boolean empty() {
+        return this.root == EMPTY;
+    }
+
+    /**
+     * public PersistentAVLTree snapshot()
+     * Returns a version of the tree which no later operation changes - the tree itself, since trees never change.
+     * Complexity: O(1)
+     */
+    public PersistentAVLTree snapshot() {
+        return this;
+    }
+
+    /**
+     * public String search(int k)
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns null
+     * Complexity: O(log n)
+     */
+    public String search(int k) {
+        Node node = this.root;
+        while (node != EMPTY) {
+            if (node.key == k)
+                return node.value;
+            node = k < node.key ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * public PersistentAVLTree insert(int k, String i)
+     * returns a tree with the items of this tree and an item with key k and info i,
+     * or this tree if an item with key k already exists in it.
+     * Complexity: O(log n) - the nodes on the path to k are copied and rebalanced on the way back up
+     */
+    public PersistentAVLTree insert(int k, String i) {
+        Node newRoot = insert(this.root, k, i);
+        return newRoot == this.root ? this : of(newRoot);
+    }
+
+    /**
+     * @return node's subtree with (k, i) added, or node itself if k is in it
+     */
+    private static Node insert(Node node, int k, String i) {
+        if (node == EMPTY)
+            return new Node(k, i, EMPTY, EMPTY);
+        if (k == node.key)
+            return node;
+        if (k < node.key) {
+            Node left = insert(node.left, k, i);
+            return left == node.left ? node : balance(node.key, node.value, left, node.right);
+        }
+        Node right = insert(node.right, k, i);
+        return right == node.right ? node : balance(node.key, node.value, node.left, right);
+    }
+
+    /**
+     * public PersistentAVLTree delete(int k)
+     * returns a tree with the items of this tree but the one with key k,
+     * or this tree if there is no item with key k in it.
+     * Complexity: O(log n) - as insert()
+     */
+    public PersistentAVLTree delete(int k) {
+        Node newRoot = delete(this.root, k);
+        return newRoot == this.root ? this : of(newRoot);
+    }
+
+    /**
+     * @return node's subtree without k, or node itself if k is not in it
+     */
+    private static Node delete(Node node, int k) {
+        if (node == EMPTY)
+            return node;
+        if (k < node.key) {
+            Node left = delete(node.left, k);
+            return left == node.left ? node : balance(node.key, node.value, left, node.right);
+        }
+        if (k > node.key) {
+            Node right = delete(node.right, k);
+            return right == node.right ? node : balance(node.key, node.value, node.left, right);
+        }
+        if (node.left == EMPTY)
+            return node.right;
+        if (node.right == EMPTY)
+            return node.left;
+        //binary - the successor takes node's place
+        Node successor = node.right;
+        while (successor.left != EMPTY)
+            successor = successor.left;
+        return balance(successor.key, successor.value, node.left, delete(node.right, successor.key));
+    }
+
+    /**
+     * public String min()
+     * Returns the info of the item with the smallest key in the tree,
+     * or null if the tree is empty
+     * Complexity: O(log n)
+     */
+    public String min() {
+        Node node = this.root;
+        while (node.left != EMPTY)
+            node = node.left;
+        return node.value;
+    }
+
+    /**
+     * public String max()
+     * Returns the info of the item with the largest key in the tree,
+     * or null if the tree is empty
+     * Complexity: O(log n)
+     */
+    public String max() {
+        Node node = this.root;
+        while (node.right != EMPTY)
+            node = node.right;
+        return node.value;
+    }
+
+    /**
+     * public int size()
+     * Returns the number of nodes in the tree.
+     * Complexity: O(1) - every node keeps the size of its subtree
+     */
+    public int size() {
+        return this.root.size;
+    }
+
+    /**
+     * public int[] keysToArray()
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty.
+     * Complexity: O(n)
+     */
+    public int[] keysToArray() {
+        int[] arr = new int[size()];
+        int[] i = new int[1];
+        forEachInRange(Integer.MIN_VALUE, Integer.MAX_VALUE, (key, value) -> arr[i[0]++] = key);
+        return arr;
+    }
+
+    /**
+     * public String[] infoToArray()
+     * Returns an array which contains all info in the tree,
+     * sorted by their respective keys,
+     * or an empty array if the tree is empty.
+     * Complexity: O(n)
+     */
+    public String[] infoToArray() {
+        String[] arr = new String[size()];
+        int[] i = new int[1];
+        forEachInRange(Integer.MIN_VALUE, Integer.MAX_VALUE, (key, value) -> arr[i[0]++] = value);
+        return arr;
+    }
+
+    /**
+     * public void forEachInRange(int lo, int hi, AVLTree.RangeConsumer consumer)
+     * Passes every item with lo <= key <= hi to consumer, in key order.
+     * An in-order walk with an explicit stack of the path, as nodes have no parent pointers -
+     * the stack holds at most height + 1 nodes.
+     * Complexity: O(log n + k) for k items in range
+     */
+    public void forEachInRange(int lo, int hi, AVLTree.RangeConsumer consumer) {
+        Node[] stack = new Node[this.root.height + 2];
+        int top = 0;
+        Node node = this.root;
+        while (true) {
+            //go down to the smallest key >= lo, keeping the nodes still to be visited
+            while (node != EMPTY) {
+                if (node.key < lo) {
+                    node = node.right;
+                }
+                else {
+                    stack[top++] = node;
+                    node = node.left;
+                }
+            }
+            if (top == 0)
+                return;
+            node = stack[--top];
+            if (node.key > hi)
+                return;
+            consumer.accept(node.key, node.value);
+            node = node.right;
+        }
+    }
+
+    /**
+     * public PersistentAVLTree[] split(int x)
+     * Returns an array [t1, t2] with two trees, keys(t1) < x < keys(t2).
+     * x does not have to be in the tree, and this tree is left as it is.
+     * Complexity: O(log n) - the path to x is cut, and the subtrees hanging off it are joined on each side
+     */
+    public PersistentAVLTree[] split(int x) {
+        Node[] parts = split(this.root, x);
+        return new PersistentAVLTree[]{of(parts[0]), of(parts[1])};
+    }
+
+    private static Node[] split(Node node, int x) {
+        if (node == EMPTY)
+            return new Node[]{EMPTY, EMPTY};
+        if (x < node.key) {
+            Node[] parts = split(node.left, x);
+            parts[1] = join(parts[1], node.key, node.value, node.right);
+            return parts;
+        }
+        if (x > node.key) {
+            Node[] parts = split(node.right, x);
+            parts[0] = join(node.left, node.key, node.value, parts[0]);
+            return parts;
+        }
+        return new Node[]{node.left, node.right};
+    }
+
+    /**
+     * public PersistentAVLTree join(int k, String i, PersistentAVLTree t)
+     * Returns a tree with the items of this tree, of t, and (k, i). Neither tree is changed.
+     * precondition: keys(k,t) < keys() or keys(k,t) > keys(). t/tree might be empty.
+     * Complexity: O(|tree.rank - t.rank| + 1) - down the side of the higher tree to the other one's height
+     */
+    public PersistentAVLTree join(int k, String i, PersistentAVLTree t) {
+        boolean tIsBigger = t.empty() ? k > maxKey() : t.root.key > k;
+        return tIsBigger ? of(join(this.root, k, i, t.root)) : of(join(t.root, k, i, this.root));
+    }
+
+    /**
+     * @return the largest key, for the side of join() - any key if the tree is empty
+     */
+    private int maxKey() {
+        Node node = this.root;
+        while (node.right != EMPTY)
+            node = node.right;
+        return node.key;
+    }
+
+    /**
+     * @pre keys(left) < k < keys(right)
+     * @return a balanced tree of left, (k, i) and right
+     */
+    private static Node join(Node left, int k, String i, Node right) {
+        if (left.height > right.height + 1)
+            return balance(left.key, left.value, left.left, join(left.right, k, i, right));
+        if (right.height > left.height + 1)
+            return balance(right.key, right.value, join(left, k, i, right.left), right.right);
+        return new Node(k, i, left, right);
+    }
+
+    /**
+     * Checks the invariants of every node - keys in order, children heights differing by at most 1,
+     * and the stored height and size. Used by the tests, which cannot reach the nodes.
+     * Complexity: O(n)
+     */
+    boolean isValidAVL() {
+        return isValidAVL(this.root, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    private static boolean isValidAVL(Node node, long lo, long hi) {
+        if (node == EMPTY)
+            return true;
+        return lo < node.key && node.key < hi
+                && Math.abs(node.left.height - node.right.height) <= 1
+                && node.height == Math.max(node.left.height, node.right.height) + 1
+                && node.size == node.left.size + node.right.size + 1
+                && isValidAVL(node.left, lo, node.key) && isValidAVL(node.right, node.key, hi);
+    }
+
+    /**
+     * @pre left and right are AVL trees whose heights differ by at most 2
+     * @return a balanced node of (k, i) with left and right - with a single or a double rotation if needed
+     * Complexity: O(1) - at most 3 new nodes
+     */
+    private static Node balance(int k, String i, Node left, Node right) {
+        if (left.height > right.height + 1) {
+            if (left.left.height >= left.right.height) //single rotation right
+                return new Node(left.key, left.value, left.left, new Node(k, i, left.right, right));
+            Node lr = left.right; //double rotation - left, then right
+            return new Node(lr.key, lr.value, new Node(left.key, left.value, left.left, lr.left), new Node(k, i, lr.right, right));
+        }
+        if (right.height > left.height + 1) {
+            if (right.right.height >= right.left.height) //single rotation left
+                return new Node(right.key, right.value, new Node(k, i, left, right.left), right.right);
+            Node rl = right.left; //double rotation - right, then left
+            return new Node(rl.key, rl.value, new Node(k, i, left, rl.left), new Node(right.key, right.value, rl.right, right.right));
+        }
+        return new Node(k, i, left, right);
+    }
+
+    /**
+     * class Node
+     * An immutable node - key, info, children, and the height (rank) and size of its subtree.
+     */
+    private static final class Node {
+        private final int key;
+        private final String value;
+        private final Node left;
+        private final Node right;
+        private final int height;
+        private final int size;
+
+        /**
+         * Constructor of the virtual node - used only once, for EMPTY
+         */
+        private Node() {
+            this.key = -1;
+            this.value = null;
+            this.left = this;
+            this.right = this;
+            this.height = -1;
+            this.size = 0;
+        }
+
+        private Node(int key, String value, Node left, Node right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(left.height, right.height) + 1;
+            this.size = left.size + right.size + 1;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ValueArena
+ * Off-heap storage of byte values - direct ByteBuffer chunks filled one after the other, so a value
+ * costs no heap object at all: it is known by a reference (its chunk and offset, in one long) and its length.
+ *
+ * The arena is append-only - bytes are never overwritten or moved - so a view returned by get()
+ * shows its value for as long as it is held (the view keeps its chunk alive).
+ * Space of freed values is only counted, and reclaimed by copying the live values to a new arena.
+ */
+
+final class ValueArena {
+
+    private final int chunkSize;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private ByteBuffer current; //the chunk being filled, null before the first value
+    private int currentIndex;
+    private long allocatedBytes;
+    private long liveBytes;
+
+    /**
+     * @pre chunkSize >= 1
+     */
+    ValueArena(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    int chunkSize() {
+        return this.chunkSize;
+    }
+
+    /**
+     * Copies the remaining bytes of value (leaving its position as it is) into the arena.
+     * A value larger than a chunk gets a chunk of its own.
+     * @return the reference of the copy
+     * Complexity: O(length)
+     */
+    long put(ByteBuffer value) {
+        int length = value.remaining();
+        ByteBuffer chunk;
+        int index;
+        if (length > this.chunkSize) {
+            chunk = ByteBuffer.allocateDirect(length);
+            index = this.chunks.size();
+            this.chunks.add(chunk);
+        }
+        else {
+            if (this.current == null || this.current.remaining() < length) {
+                this.current = ByteBuffer.allocateDirect(this.chunkSize);
+                this.currentIndex = this.chunks.size();
+                this.chunks.add(this.current);
+            }
+            chunk = this.current;
+            index = this.currentIndex;
+        }
+        long ref = (long) index << 32 | chunk.position();
+        chunk.put(value.duplicate());
+        this.allocatedBytes += length;
+        this.liveBytes += length;
+        return ref;
+    }
+
+    /**
+     * @return a read-only view of the length bytes at ref - no bytes are copied
+     * Complexity: O(1)
+     */
+    ByteBuffer get(long ref, int length) {
+        return this.chunks.get((int) (ref >>> 32)).slice((int) ref, length).asReadOnlyBuffer();
+    }
+
+    /**
+     * Counts the value of length bytes as freed - its space is reclaimed by copying the live values to a new arena
+     */
+    void free(int length) {
+        this.liveBytes -= length;
+    }
+
+    long allocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+    long liveBytes() {
+        return this.liveBytes;
+    }
+}
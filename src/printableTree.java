@@ -114,7 +114,7 @@ public class printableTree extends AVLTree {
     }
 
     public String getText(IAVLNode node){
-        if (node.getKey() == -1){
+        if (!node.isRealNode()){
             return "";
         }
         return "" + node.getKey();